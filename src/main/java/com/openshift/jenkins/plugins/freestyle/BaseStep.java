@@ -7,9 +7,15 @@ import com.openshift.jenkins.plugins.ClusterConfig;
 import com.openshift.jenkins.plugins.OpenShift;
 import com.openshift.jenkins.plugins.OpenShiftTokenCredentials;
 import com.openshift.jenkins.plugins.freestyle.model.AdvancedArgument;
+import com.openshift.jenkins.plugins.util.CertificateCache;
 import com.openshift.jenkins.plugins.util.ClientCommandBuilder;
+import com.openshift.jenkins.plugins.util.ClientCommandExecutor;
+import com.openshift.jenkins.plugins.util.ClientCommandOutputCleaner;
+import com.openshift.jenkins.plugins.util.ClientCommandRunner;
 
+import hudson.AbortException;
 import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
@@ -19,23 +25,17 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.ListBoxModel;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
-
-import static com.openshift.jenkins.plugins.util.ClientCommandOutputCleaner.redactSensitiveData;
+import java.util.concurrent.ExecutionException;
 
 public abstract class BaseStep extends Builder {
 
@@ -127,27 +127,88 @@ public abstract class BaseStep extends Builder {
         return (new OpenShift.DescriptorImpl()).getClusterConfig(getClusterName(overrides));
     }
 
-    protected boolean runOcCommand(final AbstractBuild build,
+    /***
+     * Runs `oc` on the agent of the build, in its workspace.
+     * @return the exit status of `oc`
+     */
+    protected int runOcCommand(final AbstractBuild build, final Launcher launcher,
             final TaskListener listener, final String verb,
             final List verbArgs, final List userArgs, final List options,
-            final OcProcessRunner runner)
+            final ClientCommandExecutor.Workload workload,
+            final ClientCommandRunner.OutputObserver stdoutObserver,
+            final ClientCommandRunner.OutputObserver stderrObserver)
             throws IOException, InterruptedException {
-        final Map<String, String> overrides = consolidateEnvVars(listener, build, null);
-        ClusterConfig c = getCluster(overrides);
-        final String server, project, token, caContent;
-        String selectedCAPath = "";
-        boolean shouldSkipTLSVerify = false;
-
-        ArrayList<String> advArgs = new ArrayList<String>();
+        return runOcCommand(build, launcher, listener, verb, verbArgs, userArgs, options, workload,
+                stdoutObserver, stderrObserver, null, null);
+    }
 
-        ResourceBundle bundle = ResourceBundle.getBundle("io.fabric8.jenkins.plugins.FileLocations");
+    /***
+     * Runs `oc` on the agent of the build, in its workspace, also handing its raw output to chunk observers.
+     * @return the exit status of `oc`
+     */
+    protected int runOcCommand(final AbstractBuild build, final Launcher launcher,
+            final TaskListener listener, final String verb,
+            final List verbArgs, final List userArgs, final List options,
+            final ClientCommandExecutor.Workload workload,
+            final ClientCommandRunner.OutputObserver stdoutObserver,
+            final ClientCommandRunner.OutputObserver stderrObserver,
+            final ClientCommandRunner.ChunkOutputObserver stdoutChunkObserver,
+            final ClientCommandRunner.ChunkOutputObserver stderrChunkObserver)
+            throws IOException, InterruptedException {
+        final Map<String, String> overrides = consolidateEnvVars(listener, build, launcher);
+        final FilePath workspace = getWorkspace(build);
+        ConnectionCache.Connection connection = resolveConnection(build, listener, workspace, overrides);
+        // a cached connection may have been resolved long before this build
+        CertificateCache.verify(workspace, connection.caPath);
 
+        ArrayList<String> advArgs = new ArrayList<String>();
         if (advancedArguments != null) {
             for (AdvancedArgument advArg : advancedArguments) {
                 advArgs.add(advArg.getValue(overrides));
             }
         }
 
+        final ClientCommandBuilder cmdBuilder = new ClientCommandBuilder(
+                connection.server, connection.project, connection.skipTLSVerify, connection.caPath, verb, advArgs,
+                verbArgs, userArgs, options, connection.token, Integer
+                        .parseInt(getLogLevel(overrides)), false);
+        listener.getLogger().println(
+                "Executing: " + cmdBuilder.asString(true));
+        EnvVars envVars = new EnvVars(overrides);
+        String[] command = cmdBuilder.buildCommand(false).toArray(new String[0]);
+        command = ClientCommandBuilder.fixPathInCommandArray(command, envVars,
+                listener, workspace, launcher, isVerbose());
+        ClientCommandRunner runner = new ClientCommandRunner(command, workspace, envVars,
+                stdoutObserver, stderrObserver, workload, connection.server)
+                .withChunkObservers(stdoutChunkObserver, stderrChunkObserver);
+        try {
+            return runner.run(launcher);
+        } catch (ExecutionException e) {
+            throw new IOException("Error running the client tool", e.getCause());
+        }
+    }
+
+    /***
+     * Resolves the server, project, token and CA file of this step, once per build and node; see
+     * {@link ConnectionCache}. The cache key holds the cluster, project and credential as they expand with the
+     * current overrides, so a step whose variables changed since an earlier step resolves its own connection.
+     */
+    private ConnectionCache.Connection resolveConnection(AbstractBuild build, TaskListener listener,
+            FilePath workspace, Map<String, String> overrides) throws IOException, InterruptedException {
+        ConnectionCache cache = ConnectionCache.of(build);
+        String key = ConnectionCache.key(build.getBuiltOnStr(), getClusterName(overrides),
+                getProject(overrides), getCredentialsId(overrides));
+        ConnectionCache.Connection connection = cache.getConnection(key);
+        if (connection != null) {
+            return connection;
+        }
+
+        ClusterConfig c = getCluster(overrides);
+        final String server, project, token, caContent;
+        String selectedCAPath = "";
+        boolean shouldSkipTLSVerify = false;
+
+        ResourceBundle bundle = ResourceBundle.getBundle("io.fabric8.jenkins.plugins.FileLocations");
         if (c == null) { // if null, we assume the cluster is running the
                          // Jenkins node.
             server = ClusterConfig.getHostClusterApiServerUrl();
@@ -215,75 +276,54 @@ public abstract class BaseStep extends Builder {
             token = new String(Files.readAllBytes(Paths
                     .get(SERVICE_ACCOUNT_TOKEN_PATH)), StandardCharsets.UTF_8);
         }
-        final String finalSelectedCAPath = selectedCAPath;
-        final boolean finalShouldSkipTLSVerify = shouldSkipTLSVerify;
-        final List finalAdvArgs = advArgs;
-        return withTempInput("serviceca", caContent,
-                new WithTempInputRunnable() {
-                    @Override
-                    public boolean perform(String filename) throws IOException,
-                            InterruptedException {
-                        if (filename == null) { // this will be null if we are
-                                                // running within the cluster or
-                                                // TLS verify is disabled
-                            filename = finalSelectedCAPath;
-                        }
-                        final ClientCommandBuilder cmdBuilder = new ClientCommandBuilder(
-                                server, project, finalShouldSkipTLSVerify, filename, verb, finalAdvArgs, verbArgs,
-                                userArgs, options, token, Integer
-                                        .parseInt(getLogLevel(overrides)), false);
-                        ProcessBuilder pb = new ProcessBuilder();
-                        pb.command(cmdBuilder.buildCommand(false));
-                        listener.getLogger().println(
-                                "Executing: " + cmdBuilder.asString(true));
-                        return runner.perform(pb);
-                    }
-                });
 
+        if (caContent != null) {
+            selectedCAPath = CertificateCache.getPath(workspace, caContent + "\n");
+        }
+        connection = new ConnectionCache.Connection(server, project, token,
+                shouldSkipTLSVerify, selectedCAPath);
+        cache.putConnection(key, connection);
+        return connection;
     }
 
     protected boolean standardRunOcCommand(final AbstractBuild build,
-            final TaskListener listener, String verb, List verbArgs,
-            List userArgs, List options)
+            final Launcher launcher, final TaskListener listener, String verb,
+            List verbArgs, List userArgs, List options)
             throws IOException, InterruptedException {
-        return runOcCommand(build, listener, verb, verbArgs, userArgs, options,
-                new OcProcessRunner() {
-                    @Override
-                    public boolean perform(ProcessBuilder pb)
-                            throws IOException, InterruptedException {
-                        pb.redirectErrorStream(true); // Merge stdout & stderr
-                        Process process = pb.start();
-                        // stream for combined stdout & stderr
-                        final InputStream output = process.getInputStream();
-                        new Thread(new Runnable() {
-                            @Override
-                            public void run() {
-                                StringBuffer sb = new StringBuffer();
-                                try (Reader reader = new InputStreamReader(output, StandardCharsets.UTF_8)) {
-                                    LineIterator it = IOUtils.lineIterator(reader);
-                                    while (it.hasNext()) {
-                                        String line = it.nextLine();
-                                        sb.append(line).append("\n");
-                                    }
-                                } catch (Exception e) {
-                                    listener.error("Error streaming process output");
-                                    e.printStackTrace(listener.getLogger());
-                                } finally {
-                                    listener.getLogger().println(redactSensitiveData(sb.toString()));
-                                }
-                            }
-                        }).start();
-
-                        int status = process.waitFor();
-                        if (status != 0) {
-                            listener.getLogger().println(
-                                    "Client tool terminated with status: "
-                                            + status);
-                            return false;
-                        }
-                        return true;
-                    }
-                });
+        // output is streamed to the console as it arrives, with the data of
+        // secrets redacted
+        final PrintStream logger = listener.getLogger();
+        int status = runOcCommand(build, launcher, listener, verb, verbArgs, userArgs, options,
+                ClientCommandExecutor.Workload.SHORT,
+                redactingObserver(logger), redactingObserver(logger));
+        if (status != 0) {
+            logger.println("Client tool terminated with status: " + status);
+            return false;
+        }
+        return true;
+    }
+
+    private static ClientCommandRunner.OutputObserver redactingObserver(final PrintStream logger) {
+        final OutputStream redacting = new ClientCommandOutputCleaner.RedactingOutputStream(logger);
+        return new ClientCommandRunner.OutputObserver() {
+            @Override
+            public boolean onReadLine(String line) throws IOException {
+                // stdout and stderr are read concurrently; keep their lines whole
+                synchronized (logger) {
+                    redacting.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                    redacting.flush();
+                }
+                return false; // don't interrupt `oc`
+            }
+        };
+    }
+
+    protected static FilePath getWorkspace(AbstractBuild build) throws AbortException {
+        FilePath workspace = build.getWorkspace();
+        if (workspace == null) {
+            throw new AbortException("No workspace is available for " + build.getFullDisplayName());
+        }
+        return workspace;
     }
 
     // borrowed from openshift pipeline plugin
@@ -294,6 +334,7 @@ public abstract class BaseStep extends Builder {
         TreeMap<String, String> overrides = new TreeMap<String, String>();
         // merge from all potential sources
         if (build != null) {
+            // not cached: builders running between two steps may contribute variables
             try {
                 EnvVars buildEnv = build.getEnvironment(listener);
                 if (isVerbose())
@@ -306,8 +347,28 @@ public abstract class BaseStep extends Builder {
             }
         }
 
+        Map<String, String> computerEnv = computerEnvironment(listener, build, launcher);
+        if (isVerbose())
+            listener.getLogger().println(
+                    "computer env vars:  " + computerEnv);
+        if (computerEnv != null)
+            overrides.putAll(computerEnv);
+        return overrides;
+    }
+
+    // asks the agent for its environment once per build and node; see ConnectionCache
+    private Map<String, String> computerEnvironment(TaskListener listener,
+            AbstractBuild<?, ?> build, Launcher launcher) {
+        ConnectionCache cache = null;
+        if (build != null) {
+            cache = ConnectionCache.of(build);
+            Map<String, String> cached = cache.getComputerEnvironment(build.getBuiltOnStr());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        EnvVars computerEnv = null;
         try {
-            EnvVars computerEnv = null;
             Computer computer = Computer.currentComputer();
             if (computer != null) {
                 computerEnv = computer.getEnvironment();
@@ -318,17 +379,14 @@ public abstract class BaseStep extends Builder {
                     computerEnv = computer.getEnvironment();
                 }
             }
-            if (isVerbose())
-                listener.getLogger().println(
-                        "computer env vars:  " + computerEnv);
-            if (computerEnv != null)
-                overrides.putAll(computerEnv);
         } catch (IOException | InterruptedException e2) {
             if (isVerbose())
                 e2.printStackTrace(listener.getLogger());
         }
-
-        return overrides;
+        if (cache != null && computerEnv != null) {
+            cache.putComputerEnvironment(build.getBuiltOnStr(), Collections.unmodifiableMap(computerEnv));
+        }
+        return computerEnv;
     }
 
     // borrowed from openshift pipeline plugin
@@ -407,23 +465,21 @@ public abstract class BaseStep extends Builder {
         return list;
     }
 
-    public static boolean withTempInput(String prefix, String content,
+    /***
+     * Writes content to a temporary file in dir, which may be on an agent, for the duration of runnable.
+     */
+    public static boolean withTempInput(FilePath dir, String prefix, String content,
             WithTempInputRunnable runnable) throws IOException,
             InterruptedException {
-        Path tmp = null;
+        FilePath tmp = null;
         try {
             if (content != null) {
-                tmp = Files.createTempFile(prefix, ".tmp");
-                ArrayList<String> list = new ArrayList<String>(1);
-                list.add(content);
-                Files.write(tmp, list, StandardCharsets.UTF_8,
-                        StandardOpenOption.WRITE);
+                tmp = dir.createTextTempFile(prefix, ".tmp", content + "\n", true);
             }
-            return runnable.perform((tmp == null) ? null : tmp.toAbsolutePath()
-                    .toString());
+            return runnable.perform((tmp == null) ? null : tmp.getRemote());
         } finally {
             if (tmp != null) {
-                Files.delete(tmp);
+                tmp.delete();
             }
         }
     }
@@ -433,9 +489,4 @@ public abstract class BaseStep extends Builder {
                 InterruptedException;
     }
 
-    protected interface OcProcessRunner {
-        boolean perform(ProcessBuilder pb) throws IOException,
-                InterruptedException;
-    }
-
 }
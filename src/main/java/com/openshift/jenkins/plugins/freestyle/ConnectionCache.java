@@ -0,0 +1,99 @@
+package com.openshift.jenkins.plugins.freestyle;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * {@link ConnectionCache} keeps what {@link BaseStep} resolves before running `oc` for the rest of a build: the
+ * environment of each node, and per cluster, project and credential the server, token and CA file. A job with many
+ * OpenShift steps then asks the agent for its environment, reads the global configuration, looks up the credential
+ * and locates the CA file once rather than for every step. The environment of the build itself is not kept, since
+ * builders running between two steps may add to it.
+ * <p>
+ * Everything is held in transient fields, so no token ends up in build.xml; after a restart it is simply resolved
+ * again. It is dropped when the build completes.
+ */
+public class ConnectionCache extends InvisibleAction {
+    private transient Map<String, Map<String, String>> computerEnvironments;
+    private transient Map<String, Connection> connections;
+
+    /***
+     * {@link Connection} is how steps reach a cluster.
+     */
+    static final class Connection {
+        final String server;
+        final String project;
+        final String token;
+        final boolean skipTLSVerify;
+        // the CA file to pass to `oc`, or "" for none
+        final String caPath;
+
+        Connection(String server, String project, String token, boolean skipTLSVerify, String caPath) {
+            this.server = server;
+            this.project = project;
+            this.token = token;
+            this.skipTLSVerify = skipTLSVerify;
+            this.caPath = caPath;
+        }
+    }
+
+    static ConnectionCache of(AbstractBuild<?, ?> build) {
+        synchronized (build) {
+            ConnectionCache cache = build.getAction(ConnectionCache.class);
+            if (cache == null) {
+                cache = new ConnectionCache();
+                build.addAction(cache);
+            }
+            return cache;
+        }
+    }
+
+    synchronized Map<String, String> getComputerEnvironment(String node) {
+        return computerEnvironments == null ? null : computerEnvironments.get(node);
+    }
+
+    synchronized void putComputerEnvironment(String node, Map<String, String> value) {
+        if (computerEnvironments == null) {
+            computerEnvironments = new HashMap<String, Map<String, String>>();
+        }
+        computerEnvironments.put(node, value);
+    }
+
+    synchronized Connection getConnection(String key) {
+        return connections == null ? null : connections.get(key);
+    }
+
+    synchronized void putConnection(String key, Connection connection) {
+        if (connections == null) {
+            connections = new HashMap<String, Connection>();
+        }
+        connections.put(key, connection);
+    }
+
+    static String key(String node, String cluster, String project, String credentialsId) {
+        return node + "\n" + cluster + "\n" + project + "\n" + credentialsId;
+    }
+
+    private synchronized void dispose() {
+        connections = null;
+        computerEnvironments = null;
+    }
+
+    @Extension
+    public static class Cleanup extends RunListener<Run> {
+        @Override
+        public void onCompleted(Run run, TaskListener listener) {
+            ConnectionCache cache = ((Run<?, ?>) run).getAction(ConnectionCache.class);
+            if (cache != null) {
+                cache.dispose();
+            }
+        }
+    }
+}
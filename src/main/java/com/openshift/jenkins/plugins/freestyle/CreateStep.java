@@ -30,15 +30,15 @@ public class CreateStep extends BaseStep {
     }
 
     @Override
-    public boolean perform(final AbstractBuild build, Launcher launcher,
+    public boolean perform(final AbstractBuild build, final Launcher launcher,
             final BuildListener listener) throws IOException,
             InterruptedException {
         final Map<String, String> overrides = consolidateEnvVars(listener, build, launcher);
-        return withTempInput("markup", getJsonyaml(overrides), new WithTempInputRunnable() {
+        return withTempInput(getWorkspace(build), "markup", getJsonyaml(overrides), new WithTempInputRunnable() {
             @Override
             public boolean perform(String markupFilename) throws IOException,
                     InterruptedException {
-                return standardRunOcCommand(build, listener, "create",
+                return standardRunOcCommand(build, launcher, listener, "create",
                         toList("-f", markupFilename), toList(), toList());
             }
         });
@@ -43,14 +43,14 @@ public class DeleteStep extends BaseStep {
     }
 
     @Override
-    public boolean perform(AbstractBuild build, Launcher launcher,
+    public boolean perform(AbstractBuild build, final Launcher launcher,
             BuildListener listener) throws IOException, InterruptedException {
         final Map<String, String> overrides = consolidateEnvVars(listener, build, null);
         List<String> base = selector.asSelectionArgs(overrides);
         if (isIgnoreNotFound()) {
             base.add("--ignore-not-found");
         }
-        return standardRunOcCommand(build, listener, "delete", base, toList(),
+        return standardRunOcCommand(build, launcher, listener, "delete", base, toList(),
                 toList());
     }
 
@@ -40,15 +40,15 @@ public class RawStep extends BaseStep {
     }
 
     @Override
-    public boolean perform(final AbstractBuild build, Launcher launcher,
+    public boolean perform(final AbstractBuild build, final Launcher launcher,
             final BuildListener listener) throws IOException,
             InterruptedException {
         final Map<String, String> overrides = consolidateEnvVars(listener, build, launcher);
-        return withTempInput("markup", getCommand(overrides), new WithTempInputRunnable() {
+        return withTempInput(getWorkspace(build), "markup", getCommand(overrides), new WithTempInputRunnable() {
             @Override
             public boolean perform(String markupFilename) throws IOException,
                     InterruptedException {
-                return standardRunOcCommand(build, listener, getCommand(overrides),
+                return standardRunOcCommand(build, launcher, listener, getCommand(overrides),
                         toList(getArguments(overrides)), toList(), toList());
             }
         });
@@ -2,6 +2,9 @@ package com.openshift.jenkins.plugins.freestyle;
 
 import com.google.common.base.Strings;
 import com.openshift.jenkins.plugins.freestyle.model.ResourceSelector;
+import com.openshift.jenkins.plugins.util.ClientCommandExecutor;
+import com.openshift.jenkins.plugins.util.ClientCommandRunner;
+import com.openshift.jenkins.plugins.util.StreamMatcher;
 
 import hudson.Extension;
 import hudson.Launcher;
@@ -14,14 +17,16 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WatchStep extends BaseStep {
 
+    // indexes of the patterns in the StreamMatcher
+    private static final int SUCCESS = 0;
+    private static final int FAIL = 1;
+
     private String template;
     private String successPattern;
     private String failPattern;
@@ -80,7 +85,7 @@ public class WatchStep extends BaseStep {
     }
 
     @Override
-    public boolean perform(final AbstractBuild build, Launcher launcher,
+    public boolean perform(final AbstractBuild build, final Launcher launcher,
             final BuildListener listener) throws IOException,
             InterruptedException {
         final Map<String, String> overrides = consolidateEnvVars(listener, build, launcher);
@@ -90,123 +95,84 @@ public class WatchStep extends BaseStep {
         base.add("--watch");
         base.add("--template=" + getTemplate(overrides));
         base.add("-o=template");
+        // Expand the patterns once and match them incrementally, instead of
+        // searching all of the output again after every read. The output is
+        // matched as it is read rather than line by line, since a template such
+        // as {{.status.phase}} never ends a line. stdout and stderr are read
+        // concurrently, so each has its own matcher.
+        final String success = getSuccessPattern(overrides);
+        final String fail = getFailPattern(overrides);
+        final StreamMatcher stdoutMatcher = new StreamMatcher(success, fail);
+        final StreamMatcher stderrMatcher = new StreamMatcher(success, fail);
+        final ClientCommandRunner.OutputObserver ignoreLines = line -> false;
         while (!watchSatisfied.get()) { // Watch can simply timeout, so we may
                                         // need to reinvoke. Loop until we get
                                         // true-positive feedback.
-            final StringBuffer totalOutput = new StringBuffer();
-            runOcCommand(build, listener, "get", base, toList(), toList(),
-                    new OcProcessRunner() {
-
-                        @Override
-                        public boolean perform(ProcessBuilder pb)
-                                throws IOException, InterruptedException {
-                            pb.redirectErrorStream(true); // Merge stdout &
-                                                          // stderr
-                            final Process process = pb.start();
-                            final InputStream output = process.getInputStream(); // stream
-                                                                                 // for
-                                                                                 // combined
-                                                                                 // stdout
-                                                                                 // &
-                                                                                 // stderr
-
-                            new Thread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    byte buffer[] = new byte[1024];
-                                    int count;
-                                    try {
-                                        while ((count = output.read(buffer)) != -1) {
-                                            totalOutput.append(new String(
-                                                    buffer, 0, count,
-                                                    StandardCharsets.UTF_8));
-
-                                            if (isVerbose()) { // If logging
-                                                               // level is
-                                                               // turned up,
-                                                               // stream all
-                                                               // output from
-                                                               // the watch out
-                                                               // to the console
-                                                listener.getLogger().write(
-                                                        buffer, 0, count);
-                                            }
-
-                                            // Don't allow the output to grow
-                                            // without bound.
-                                            // Just make sure we allow it to
-                                            // grow larger than the user's
-                                            // success/fail patterns.
-                                            // We could measure them if we
-                                            // wanted, but no one is going to be
-                                            // looking for a pattern > 100K.
-                                            if (totalOutput.length() > 200000) {
-                                                totalOutput.delete(0, 100000);
-                                            }
-
-                                            if (totalOutput
-                                                    .indexOf(getSuccessPattern(overrides)) > -1) {
-                                                watchSatisfied.set(true);
-                                                watchResult.set(true);
-                                                listener.getLogger()
-                                                        .println(
-                                                                "Found success pattern: '"
-                                                                        + getSuccessPattern(overrides)
-                                                                        + "' in: \n>>>\n"
-                                                                        + totalOutput
-                                                                        + "\n<<<");
-                                                process.destroy();
-                                            }
-
-                                            if (!Strings
-                                                    .isNullOrEmpty(getFailPattern(overrides))
-                                                    && totalOutput
-                                                            .indexOf(getFailPattern(overrides)) > -1) {
-                                                watchSatisfied.set(true);
-                                                watchResult.set(false);
-                                                listener.getLogger()
-                                                        .println(
-                                                                "Found failure pattern: '"
-                                                                        + getFailPattern(overrides)
-                                                                        + "' in: \n>>>\n"
-                                                                        + totalOutput
-                                                                        + "\n<<<");
-                                                process.destroy();
-                                            }
-
-                                        }
-                                    } catch (Exception e) {
-                                        if (!watchSatisfied.get()) {
-                                            // If the watch isn't yet satisfied
-                                            // and we have an exception, then it
-                                            // is a problem.
-                                            listener.error("Error streaming process output");
-                                            e.printStackTrace(listener
-                                                    .getLogger());
-                                        }
-                                    }
-                                }
-                            }).start();
-
-                            int status = process.waitFor();
-                            if (!watchSatisfied.get() && status != 0) {
-                                listener.getLogger().println(
-                                        "Client tool watch terminated with error: "
-                                                + status);
-                                listener.getLogger().println(totalOutput);
-                                watchSatisfied.set(true);
-                                watchResult.set(false);
-
-                            }
-                            return true; // This value ignored. Only watchResult
-                                         // matters.
-                        }
-                    });
+            stdoutMatcher.reset();
+            stderrMatcher.reset();
+            int status = runOcCommand(build, launcher, listener, "get", base,
+                    toList(), toList(), ClientCommandExecutor.Workload.STREAM,
+                    ignoreLines, ignoreLines,
+                    matching(stdoutMatcher, success, fail, listener, watchSatisfied, watchResult),
+                    matching(stderrMatcher, success, fail, listener, watchSatisfied, watchResult));
+            if (!watchSatisfied.get() && status != 0) {
+                listener.getLogger().println(
+                        "Client tool watch terminated with error: " + status);
+                listener.getLogger().println(stdoutMatcher.getTail());
+                listener.getLogger().println(stderrMatcher.getTail());
+                watchSatisfied.set(true);
+                watchResult.set(false);
+            }
         }
 
         return watchResult.get();
     }
 
+    private ClientCommandRunner.ChunkOutputObserver matching(final StreamMatcher matcher,
+            final String success, final String fail, final BuildListener listener,
+            final AtomicBoolean watchSatisfied, final AtomicBoolean watchResult) {
+        return (buffer, offset, length) -> {
+            boolean found = matcher.update(buffer, offset, length);
+
+            if (isVerbose()) { // If logging level is turned up, stream all
+                               // output from the watch out to the console
+                listener.getLogger().write(buffer, offset, length);
+            }
+
+            synchronized (watchSatisfied) { // stdout and stderr are read
+                                            // concurrently
+                if (watchSatisfied.get()) {
+                    return true;
+                }
+
+                // An empty success pattern is satisfied by any output.
+                if (matcher.isMatched(SUCCESS) || Strings.isNullOrEmpty(success)) {
+                    watchSatisfied.set(true);
+                    watchResult.set(true);
+                    if (found || Strings.isNullOrEmpty(success)) {
+                        listener.getLogger().println(
+                                "Found success pattern: '" + success
+                                        + "' in: \n>>>\n" + matcher.getTail()
+                                        + "\n<<<");
+                    }
+                }
+
+                if (matcher.isMatched(FAIL)) {
+                    watchSatisfied.set(true);
+                    watchResult.set(false);
+                    if (found) {
+                        listener.getLogger().println(
+                                "Found failure pattern: '" + fail
+                                        + "' in: \n>>>\n" + matcher.getTail()
+                                        + "\n<<<");
+                    }
+                }
+
+                return watchSatisfied.get(); // stop `oc` once satisfied
+            }
+        };
+    }
+
     @Extension
     public static final class DescriptorImpl extends BaseStepDescriptor {
 
@@ -1,14 +1,21 @@
 package com.openshift.jenkins.plugins.pipeline;
 
+import com.openshift.jenkins.plugins.util.BlobStore;
+import com.openshift.jenkins.plugins.util.CapturedOutput;
+import com.openshift.jenkins.plugins.util.CertificateCache;
 import com.openshift.jenkins.plugins.util.ClientCommandBuilder;
-import com.openshift.jenkins.plugins.util.ClientCommandOutputCleaner;
+import com.openshift.jenkins.plugins.util.ClientCommandExecutor;
+import com.openshift.jenkins.plugins.util.ClientCommandPipe;
 import com.openshift.jenkins.plugins.util.ClientCommandRunner;
+import com.openshift.jenkins.plugins.util.OutputCapture;
+import com.openshift.jenkins.plugins.util.RestClientEngine;
 import hudson.*;
 import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.QuotedStringTokenizer;
+import org.apache.commons.io.IOUtils;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
@@ -17,12 +24,23 @@ import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class OcAction extends AbstractStepImpl {
 
@@ -34,12 +52,19 @@ public class OcAction extends AbstractStepImpl {
     private final boolean verbose;
     protected final String streamStdOutToConsolePrefix;
     private final HashMap<String, String> reference;
+    private final String engine;
+    private final String stdin;
+    // reference to markup fed to `oc ... -f -`, held in the build's BlobStore; null if none
+    private final String stdinBlob;
+    // the command the output of cmdBuilder is piped into, on the agent; null if none
+    private final ClientCommandBuilder pipeBuilder;
 
     @DataBoundConstructor
     public OcAction(String server, String project, boolean skipTLSVerify, String caPath,
                     String verb, List advArgs, List verbArgs, List userArgs, List options, String token,
                     String streamStdOutToConsolePrefix,
-                    HashMap<String, String> reference, int logLevel) {
+                    HashMap<String, String> reference, int logLevel, String engine, String stdin,
+                    String pipeVerb, List pipeVerbArgs, List pipeOptions, String stdinBlob) {
         this.cmdBuilder = new ClientCommandBuilder(server, project, skipTLSVerify, caPath,
                 verb, advArgs, verbArgs, userArgs, options, token, logLevel, (streamStdOutToConsolePrefix != null && !streamStdOutToConsolePrefix.trim().isEmpty()));
         this.verbose = (logLevel > 0);
@@ -48,18 +73,30 @@ public class OcAction extends AbstractStepImpl {
         // contents not visibile in the command line.
         this.reference = reference == null ? (new HashMap<String, String>())
                 : reference;
+        // null selects the engine configured for the controller, see RestClientEngine
+        this.engine = engine;
+        // markup fed to `oc ... -f -`
+        this.stdin = stdin;
+        this.stdinBlob = stdinBlob;
+        this.pipeBuilder = pipeVerb == null ? null : new ClientCommandBuilder(server, project, skipTLSVerify, caPath,
+                pipeVerb, advArgs, pipeVerbArgs, new ArrayList(), pipeOptions, token, logLevel, false);
     }
 
     public static class OcActionResult implements Serializable {
+        // as computed for the class before out and err became CapturedOutput, so results saved by a build running
+        // during an upgrade can still be read; see readObject
+        private static final long serialVersionUID = 436389794321380022L;
+
+        // `oc` refers to objects as kind/name or "name"
+        private static final Pattern OBJECT_MENTION = Pattern.compile("[/\"]([A-Za-z0-9][A-Za-z0-9._:@-]*)");
 
         @Whitelisted
         public String verb;
         @Whitelisted
         public String cmd;
-        @Whitelisted
-        public String out;
-        @Whitelisted
-        public String err;
+        // stdout/stderr are held by handles which materialize spilled output only when it is read
+        private CapturedOutput capturedOut = CapturedOutput.EMPTY;
+        private CapturedOutput capturedErr = CapturedOutput.EMPTY;
         @Whitelisted
         public int status;
         @Whitelisted
@@ -67,12 +104,42 @@ public class OcAction extends AbstractStepImpl {
         @Whitelisted
         public boolean verbose = false;
 
-        public HashMap toMap() {
+        @Whitelisted
+        public String getOut() throws IOException {
+            return capturedOut == null ? null : capturedOut.asString();
+        }
+
+        public void setOut(String out) {
+            this.capturedOut = CapturedOutput.ofString(out);
+        }
+
+        @Whitelisted
+        public String getErr() throws IOException {
+            return capturedErr == null ? null : capturedErr.asString();
+        }
+
+        public void setErr(String err) {
+            this.capturedErr = CapturedOutput.ofString(err);
+        }
+
+        /***
+         * @return a handle on stdout which can be streamed without materializing it as a String
+         */
+        public CapturedOutput getCapturedOut() {
+            return capturedOut == null ? CapturedOutput.EMPTY : capturedOut;
+        }
+
+        public CapturedOutput getCapturedErr() {
+            return capturedErr == null ? CapturedOutput.EMPTY : capturedErr;
+        }
+
+        public HashMap toMap() throws IOException {
             HashMap m = new HashMap();
             m.put("verb", verb);
             m.put("cmd", cmd);
-            m.put("out", out);
-            m.put("err", ClientCommandOutputCleaner.redactSensitiveData(err));
+            m.put("out", getOut());
+            // secret data was located while stderr was captured, see OutputCapture.redactingSecrets
+            m.put("err", getCapturedErr().asRedactedString());
             if (verbose) {
                 m.put("reference", reference);
             }
@@ -82,13 +149,130 @@ public class OcAction extends AbstractStepImpl {
 
         @Whitelisted
         public String toString() {
-            return toMap().toString();
+            try {
+                return toMap().toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
 
         public boolean isFailed() {
             return status != 0;
         }
 
+        /***
+         * Splits the result of an invocation which named several objects (e.g. `oc scale dc/a dc/b`) into one result
+         * per object, attributing each line of output to the object it mentions.
+         * <p>
+         * When the invocation succeeded, lines which mention no object (warnings, for instance) are kept with the first
+         * object. When it failed, an object is considered successful only if `oc` reported on it without an error; an
+         * object `oc` did not report on at all gets a null entry, so the caller can retry it on its own.
+         * @param names the qualified names passed to `oc`, e.g. deploymentconfig/frontend; their unqualified names
+         *              must be unique
+         * @return the results, in the order of the names
+         */
+        public ArrayList<OcActionResult> splitByObject(List<String> names) throws IOException {
+            HashMap<String, Integer> index = new HashMap<String, Integer>();
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                index.put(name.substring(name.lastIndexOf('/') + 1), i);
+            }
+            StringBuilder[] outs = new StringBuilder[names.size()];
+            StringBuilder[] errs = new StringBuilder[names.size()];
+            StringBuilder strayOut = new StringBuilder();
+            StringBuilder strayErr = new StringBuilder();
+            attribute(getOut(), index, outs, strayOut);
+            attribute(getErr(), index, errs, strayErr);
+
+            ArrayList<OcActionResult> results = new ArrayList<OcActionResult>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                if (status != 0 && outs[i] == null && errs[i] == null) {
+                    results.add(null);
+                    continue;
+                }
+                OcActionResult r = new OcActionResult();
+                r.verb = verb;
+                r.cmd = cmd;
+                r.reference = reference;
+                r.verbose = verbose;
+                if (status == 0) {
+                    r.status = 0;
+                } else if (errs[i] != null || outs[i] == null) {
+                    r.status = status;
+                } else {
+                    r.status = 0;
+                }
+                if (status == 0 && results.isEmpty()) {
+                    r.setOut(concat(outs[i], strayOut));
+                    r.setErr(concat(errs[i], strayErr));
+                } else {
+                    r.setOut(outs[i] == null ? "" : outs[i].toString());
+                    r.setErr(errs[i] == null ? "" : errs[i].toString());
+                }
+                results.add(r);
+            }
+            return results;
+        }
+
+        /***
+         * Reads results saved before out and err became {@link CapturedOutput}, when both were String fields.
+         */
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField fields = in.readFields();
+            ObjectStreamClass saved = fields.getObjectStreamClass();
+            verb = (String) fields.get("verb", null);
+            cmd = (String) fields.get("cmd", null);
+            status = fields.get("status", 0);
+            verbose = fields.get("verbose", false);
+            reference = (HashMap<String, String>) fields.get("reference", null);
+            if (reference == null) {
+                reference = new HashMap<String, String>();
+            }
+            capturedOut = saved.getField("capturedOut") != null ? (CapturedOutput) fields.get("capturedOut", null)
+                    : CapturedOutput.ofString((String) fields.get("out", null));
+            capturedErr = saved.getField("capturedErr") != null ? (CapturedOutput) fields.get("capturedErr", null)
+                    : CapturedOutput.ofString((String) fields.get("err", null));
+        }
+
+        private static String concat(StringBuilder a, StringBuilder b) {
+            return (a == null ? "" : a.toString()) + b;
+        }
+
+        private static void attribute(String text, HashMap<String, Integer> index, StringBuilder[] targets, StringBuilder stray) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            for (String line : text.split("\n")) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int owner = -1;
+                Matcher m = OBJECT_MENTION.matcher(line);
+                while (m.find()) {
+                    Integer i = index.get(m.group(1));
+                    if (i == null || i == owner) {
+                        continue;
+                    }
+                    if (owner >= 0) {
+                        owner = -2; // mentions several objects
+                        break;
+                    }
+                    owner = i;
+                }
+                StringBuilder target;
+                if (owner >= 0) {
+                    if (targets[owner] == null) {
+                        targets[owner] = new StringBuilder();
+                    }
+                    target = targets[owner];
+                } else {
+                    target = stray;
+                }
+                target.append(line).append('\n');
+            }
+        }
+
         public void failIf(String failMessage) throws AbortException {
             if (isFailed()) {
                 throw new AbortException(failMessage + "; action failed: "
@@ -131,6 +315,13 @@ public class OcAction extends AbstractStepImpl {
 
         private static final long serialVersionUID = 1L;
 
+        /**
+         * Directory, relative to the build directory, receiving output which is too large to keep in memory.
+         */
+        static final String SPILL_DIRECTORY = "openshift-client";
+
+        private static final byte[] KLOG_MARKER = ".go:".getBytes(StandardCharsets.US_ASCII);
+
         @Inject
         private transient OcAction step;
 
@@ -149,14 +340,44 @@ public class OcAction extends AbstractStepImpl {
         @StepContextParameter
         private transient Computer computer;
 
-        private void printToConsole(String line) {
-            if (step.streamStdOutToConsolePrefix == null
-                    || step.streamStdOutToConsolePrefix.trim().isEmpty()) {
+        private boolean isStreaming() {
+            return step.streamStdOutToConsolePrefix != null
+                    && !step.streamStdOutToConsolePrefix.trim().isEmpty();
+        }
+
+        private void printToConsole(byte[] buffer, int offset, int length) {
+            if (!isStreaming()) {
                 return;
             }
             final String prefix = "[" + step.streamStdOutToConsolePrefix + "] ";
-            listener.getLogger().println(prefix + line);
-            listener.getLogger().flush();
+            PrintStream logger = listener.getLogger();
+            synchronized (logger) { // stdout and stderr lines are printed from different threads
+                logger.print(prefix);
+                logger.write(buffer, offset, length);
+                logger.println();
+                logger.flush();
+            }
+        }
+
+        private void printCaptured(CapturedOutput captured) throws IOException {
+            PrintStream logger = listener.getLogger();
+            try (InputStream in = captured.openStream()) {
+                IOUtils.copy(in, logger);
+            }
+            logger.println();
+        }
+
+        private static boolean contains(byte[] buffer, int offset, int length, byte[] pattern) {
+            outer:
+            for (int i = offset, last = offset + length - pattern.length; i <= last; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (buffer[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+            return false;
         }
 
         @Override
@@ -175,54 +396,184 @@ public class OcAction extends AbstractStepImpl {
                         .println(
                                 "Consider removing those options from startBuild and using the logs() command to follow the build output.");
             }
+            // lines are kept as raw bytes, in memory or spilled into the build directory, and decoded only when read
+            File spillDirectory = new File(runObj.getRootDir(), SPILL_DIRECTORY);
+            final OutputCapture stdout = new OutputCapture(spillDirectory, "stdout");
+            final OutputCapture stderr = new OutputCapture(spillDirectory, "stderr").redactingSecrets();
+
+            File blobs = BlobStore.directory(runObj);
+            byte[] input = readStdin(blobs);
+
+            // the context resolved the certificate authority when it began, which may have been a while ago
+            CertificateCache.verify(filePath, step.cmdBuilder.caPath);
+
+            int exitStatus = -1;
+            boolean served = false;
+            RestClientEngine engine = step.pipeBuilder != null ? null : RestClientEngine.forCommand(step.cmdBuilder, step.engine);
+            if (engine != null) {
+                try (ClientCommandExecutor.Permit permit = ClientCommandExecutor.acquire(ClientCommandExecutor.Workload.SHORT, step.cmdBuilder.server)) {
+                    exitStatus = engine.execute(readCertificateAuthority(), stdout, stderr);
+                    served = true;
+                    if (step.verbose) {
+                        listener.getLogger().println("Served natively: " + engine);
+                    }
+                } catch (RestClientEngine.FallbackException e) {
+                    LOGGER.log(Level.FINE, "falling back to oc", e);
+                    if (step.verbose) {
+                        listener.getLogger().println("Falling back to oc: " + e.getMessage());
+                    }
+                }
+            }
+            if (step.pipeBuilder != null) {
+                exitStatus = runPipe(stdout, stderr, input);
+            } else if (!served) {
+                exitStatus = runClient(stdout, stderr, input);
+            }
+
+            OcActionResult result = new OcActionResult();
+            result.status = exitStatus;
+            result.verb = step.cmdBuilder.verb;
+            result.cmd = step.cmdBuilder.asString(true);
+            if (step.pipeBuilder != null) {
+                result.cmd += " | " + step.pipeBuilder.asString(true);
+            }
+            result.reference = storeReference(step.reference, blobs);
+            result.capturedOut = stdout.toCapturedOutput();
+            result.capturedErr = stderr.toCapturedOutput();
+            result.verbose = step.verbose;
+
+            if (step.verbose) {
+                listener.getLogger().println("Verbose sub-step output:");
+                listener.getLogger().println("\tCommand> " + result.cmd);
+                listener.getLogger().println("\tStatus> " + result.status);
+                listener.getLogger().print("\tStdOut>");
+                printCaptured(result.capturedOut);
+                listener.getLogger().print("\tStdErr> ");
+                printCaptured(result.capturedErr);
+                listener.getLogger().println(
+                        "\tReference> " + resolveReference(result.reference, blobs));
+            }
+            return result;
+        }
+
+        /***
+         * Keeps reference values, such as the markup fed to `oc ... -f -`, in the build's {@link BlobStore}; the step
+         * arguments and the result, both persisted with the pipeline, only carry references to them.
+         */
+        private static HashMap<String, String> storeReference(HashMap<String, String> reference, File blobs) throws IOException {
+            HashMap<String, String> stored = new HashMap<String, String>(reference);
+            for (String key : reference.keySet()) {
+                String value = reference.get(key);
+                if (value != null && !BlobStore.isReference(value)) {
+                    stored.put(key, BlobStore.put(blobs, value));
+                }
+            }
+            return stored;
+        }
+
+        /***
+         * @return reference with the content of the values held in the build's {@link BlobStore}, for verbose output
+         */
+        private static HashMap<String, String> resolveReference(HashMap<String, String> reference, File blobs) throws IOException {
+            HashMap<String, String> resolved = new HashMap<String, String>(reference);
+            for (String key : reference.keySet()) {
+                String content = BlobStore.get(blobs, reference.get(key));
+                if (content != null) {
+                    resolved.put(key, content);
+                }
+            }
+            return resolved;
+        }
+
+        private byte[] readStdin(File blobs) throws IOException {
+            if (step.stdinBlob != null) {
+                String content = BlobStore.get(blobs, step.stdinBlob);
+                if (content == null) {
+                    throw new AbortException("Input " + step.stdinBlob + " not found in " + blobs);
+                }
+                return content.getBytes(StandardCharsets.UTF_8);
+            }
+            return step.stdin == null ? null : step.stdin.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private String readCertificateAuthority() throws IOException, InterruptedException, RestClientEngine.FallbackException {
+            if (step.cmdBuilder.caPath == null) {
+                return null;
+            }
+            String content = CertificateCache.getContent(step.cmdBuilder.caPath);
+            if (content != null) {
+                return content;
+            }
+            // kept by the context in the agent's temporary directory, see CertificateCache
+            FilePath ca = new FilePath(filePath.getChannel(), step.cmdBuilder.caPath);
+            if (!ca.exists()) {
+                throw new RestClientEngine.FallbackException("certificate authority " + step.cmdBuilder.caPath + " not found");
+            }
+            return ca.readToString();
+        }
+
+        /***
+         * Runs the command with its output piped into step.pipeBuilder on the agent; except on Windows agents, the
+         * intermediate output never reaches the controller.
+         */
+        private int runPipe(final OutputCapture stdout, final OutputCapture stderr, byte[] input) throws IOException, InterruptedException {
+            String[] producer = ClientCommandBuilder.fixPathInCommandArray(
+                    QuotedStringTokenizer.tokenize(step.cmdBuilder.asString(false)), envVars, listener, filePath, launcher, step.verbose);
+            String[] consumer = ClientCommandBuilder.fixPathInCommandArray(
+                    QuotedStringTokenizer.tokenize(step.pipeBuilder.asString(false)), envVars, listener, filePath, launcher, step.verbose);
+            try {
+                return ClientCommandPipe.run(launcher, filePath, envVars, input, producer, consumer,
+                        step.cmdBuilder.server, stdout, stderr);
+            } finally {
+                stdout.close();
+                stderr.close();
+            }
+        }
+
+        private int runClient(final OutputCapture stdout, final OutputCapture stderr, byte[] input) throws IOException, InterruptedException {
             String commandString = step.cmdBuilder.asString(false);
             String[] command = QuotedStringTokenizer.tokenize(commandString);
             command = ClientCommandBuilder.fixPathInCommandArray(command, envVars, listener, filePath, launcher, step.verbose);
-            final StringBuffer stdout = new StringBuffer();
-            final StringBuffer stderr = new StringBuffer();
             ClientCommandRunner runner = new ClientCommandRunner(command, filePath, envVars,
-                    line -> { // got a line from stdout
+                    (buffer, offset, length) -> { // got a line from stdout
                         // some of the k8s klog's like the cached_discovery.go V(3) logging ends up in StdOut
                         // vs. StdErr; so we employ a simple filter to discern and send these to stderr instead
-                        if (line != null && line.contains(".go:")) {
-                            stderr.append(line).append('\n');
-                        } else {
-                            stdout.append(line).append('\n');
+                        OutputCapture target = contains(buffer, offset, length, KLOG_MARKER) ? stderr : stdout;
+                        synchronized (target) {
+                            target.write(buffer, offset, length);
+                            target.write('\n');
                         }
-                        printToConsole(line);
+                        printToConsole(buffer, offset, length);
                         return false; // don't interrupt `oc`
                     },
-                    line -> { // got a line from stderr
-                        stderr.append(line).append('\n');
-                        printToConsole(line);
+                    (buffer, offset, length) -> { // got a line from stderr
+                        synchronized (stderr) {
+                            stderr.write(buffer, offset, length);
+                            stderr.write('\n');
+                        }
+                        printToConsole(buffer, offset, length);
                         return false; // don't interrupt `oc`
-                    });
+                    },
+                    // output streamed to the console (logs, rollout status, start-build -F) may run for a long time
+                    isStreaming() ? ClientCommandExecutor.Workload.STREAM : ClientCommandExecutor.Workload.SHORT,
+                    step.cmdBuilder.server);
+            if (input != null) {
+                runner.withStdin(input);
+            }
 
             int exitStatus = -1;
             try {
                 exitStatus = runner.run(launcher);
             } catch (Throwable ex) {
                 getContext().onFailure(ex);
+            } finally {
+                stdout.close();
+                stderr.close();
             }
-            OcActionResult result = new OcActionResult();
-            result.status = exitStatus;
-            result.verb = step.cmdBuilder.verb;
-            result.cmd = step.cmdBuilder.asString(true);
-            result.reference = step.reference;
-            result.out = stdout.toString();
-            result.err = stderr.toString();
-            result.verbose = step.verbose;
-
-            if (step.verbose) {
-                listener.getLogger().println("Verbose sub-step output:");
-                listener.getLogger().println("\tCommand> " + result.cmd);
-                listener.getLogger().println("\tStatus> " + result.status);
-                listener.getLogger().println("\tStdOut>" + result.out);
-                listener.getLogger().println("\tStdErr> " + result.err);
-                listener.getLogger().println(
-                        "\tReference> " + result.reference);
+            if (step.verbose && runner.getQueueWaitMillis() > 0) {
+                listener.getLogger().println("Waited " + runner.getQueueWaitMillis() + "ms for a free oc slot on " + step.cmdBuilder.server);
             }
-            return result;
+            return exitStatus;
         }
     }
 
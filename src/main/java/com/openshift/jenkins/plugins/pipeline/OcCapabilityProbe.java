@@ -0,0 +1,152 @@
+package com.openshift.jenkins.plugins.pipeline;
+
+import com.openshift.jenkins.plugins.OpenShift;
+import com.openshift.jenkins.plugins.util.ClientCommandBuilder;
+import com.openshift.jenkins.plugins.util.ClientCommandRunner;
+import com.openshift.jenkins.plugins.util.OcCapabilities;
+import com.openshift.jenkins.plugins.util.OcCapabilityRegistry;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * Returns the {@link OcCapabilities} of the `oc` binary the current agent would run, probing the binary
+ * only if {@link OcCapabilityRegistry} has not seen it before.
+ */
+public class OcCapabilityProbe extends AbstractStepImpl {
+
+    private static final Logger LOGGER = Logger.getLogger(OcCapabilityProbe.class.getName());
+
+    public static final String FUNCTION_NAME = "_OcCapabilities";
+
+    private final boolean verbose;
+
+    @DataBoundConstructor
+    public OcCapabilityProbe(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return FUNCTION_NAME;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Internal utility function for OpenShift DSL";
+        }
+
+        /**
+         * This step is not meant to be used directly by DSL scripts. Setting
+         * advanced causes this entry to show up at the bottom of the function
+         * listing.
+         */
+        @Override
+        public boolean isAdvanced() {
+            return true;
+        }
+    }
+
+    public static final class Execution extends AbstractSynchronousNonBlockingStepExecution<OcCapabilities> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient OcCapabilityProbe step;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+        @StepContextParameter
+        private transient Launcher launcher;
+        @StepContextParameter
+        private transient EnvVars envVars;
+        @StepContextParameter
+        private transient FilePath filePath;
+        @StepContextParameter
+        private transient Computer computer;
+
+        // whether a probe exited with a non-zero status, e.g. because the agent ran out of processes
+        private transient boolean incomplete;
+
+        @Override
+        protected OcCapabilities run() throws IOException, InterruptedException, ExecutionException {
+            if (!filePath.exists()) {
+                filePath.mkdirs();
+            }
+            String toolName = (new OpenShift.DescriptorImpl()).getClientToolName();
+            String binary = ClientCommandBuilder.fixPathInCommandArray(new String[]{toolName}, envVars, listener,
+                    filePath, launcher, step.verbose)[0];
+
+            // the key changes whenever the binary is replaced, so a stale entry is simply never looked up again
+            String key = null;
+            FilePath bin = new FilePath(filePath.getChannel(), binary);
+            if (bin.exists()) {
+                key = OcCapabilityRegistry.key(computer == null ? null : computer.getName(), binary, bin.length(),
+                        bin.lastModified());
+                OcCapabilities known = OcCapabilityRegistry.get(key);
+                if (known != null) {
+                    if (step.verbose) {
+                        listener.getLogger().println("using the recorded capabilities of " + binary + ": " + known);
+                    }
+                    return known;
+                }
+            }
+
+            OcCapabilities caps = new OcCapabilities(binary);
+            for (String verb : OcCapabilities.PROBED_VERBS) {
+                caps.parseHelp(verb, probe(binary, "help", verb));
+            }
+            caps.parseVersion(probe(binary, "version", "--client"));
+            LOGGER.log(Level.FINE, "probed " + caps);
+            if (step.verbose) {
+                listener.getLogger().println("probed the capabilities of " + binary + ": " + caps);
+            }
+            // a failed probe yields partial capabilities; use them for this build only and probe again next time
+            if (key != null && !incomplete) {
+                OcCapabilityRegistry.put(key, caps);
+            } else if (incomplete) {
+                LOGGER.log(Level.FINE, "not recording the capabilities of " + binary + ", a probe failed");
+            }
+            return caps;
+        }
+
+        private String probe(String... command) throws IOException, InterruptedException, ExecutionException {
+            final StringBuilder out = new StringBuilder();
+            ClientCommandRunner runner = new ClientCommandRunner(command, filePath, envVars,
+                    line -> {
+                        synchronized (out) {
+                            out.append(line).append('\n');
+                        }
+                        return false; // don't interrupt `oc`
+                    },
+                    line -> false);
+            if (runner.run(launcher) != 0) {
+                incomplete = true;
+            }
+            synchronized (out) {
+                return out.toString();
+            }
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package com.openshift.jenkins.plugins.pipeline;
 
 import com.openshift.jenkins.plugins.util.ClientCommandBuilder;
-import com.openshift.jenkins.plugins.util.ClientCommandRunner;
+import com.openshift.jenkins.plugins.util.ResourceKind;
+import com.openshift.jenkins.plugins.util.WatchEventCoalescer;
+import com.openshift.jenkins.plugins.util.WatchHub;
 import hudson.*;
 import hudson.model.TaskListener;
-import hudson.util.QuotedStringTokenizer;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
@@ -13,6 +14,8 @@ import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -27,13 +30,45 @@ public class OcWatch extends AbstractStepImpl {
 
     private final int watchLoglevel;
 
+    // what is watched, so that a watch which ended can be resumed where it stopped; see resumePath
+    private final String watchKind;
+    private final String watchName;
+    private final String watchLabels;
+
     @DataBoundConstructor
     public OcWatch(String server, String project, boolean skipTLSVerify, String caPath, String verb, List advArgs, List verbArgs,
                    List userArgs, List options, String token,
-                   int logLevel) {
+                   int logLevel, String watchKind, String watchName, String watchLabels) {
         this.watchLoglevel = logLevel;
         this.cmdBuilder = new ClientCommandBuilder(server, project, skipTLSVerify, caPath, verb,
                 advArgs, verbArgs, userArgs, options, token, logLevel, false);
+        this.watchKind = watchKind;
+        this.watchName = watchName;
+        this.watchLabels = watchLabels;
+    }
+
+    /***
+     * @return the API path of the watched objects, with their selectors as query parameters, or null if the kind is
+     * not known to {@link ResourceKind}; see {@link WatchHub.Source}
+     */
+    static String resumePath(String watchKind, String project, String watchName, String watchLabels) {
+        ResourceKind kind = watchKind == null ? null : ResourceKind.lookup(watchKind);
+        if (kind == null || (kind.namespaced && project == null)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(kind.getCollectionPath(project));
+        try {
+            if (watchName != null) {
+                sb.append("?fieldSelector=").append(URLEncoder.encode("metadata.name=" + watchName, "UTF-8"));
+            }
+            if (watchLabels != null) {
+                sb.append(watchName != null ? '&' : '?')
+                        .append("labelSelector=").append(URLEncoder.encode(watchLabels, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+        return sb.toString();
     }
 
     @Extension
@@ -100,85 +135,83 @@ public class OcWatch extends AbstractStepImpl {
             getContext().saveState();
             listener.getLogger().println("Entering watch");
 
-            final StringBuffer stderr = new StringBuffer();
-            final boolean[] watchSuccess = {false};
-
-            String commandString = step.cmdBuilder.asString(false);
-            String[] command = QuotedStringTokenizer.tokenize(commandString);
-            command = ClientCommandBuilder.fixPathInCommandArray(command, envVars, listener, filePath, launcher, step.watchLoglevel > 0);
-            final TaskListener listener = this.listener;
-            final int[] jsonRetries = {0};
-            ClientCommandRunner runner = new ClientCommandRunner(command, filePath, envVars,
-                    line -> { // got a line from stdout
-                        if (step.watchLoglevel > 0) {
-                            listener.getLogger().println("Received verbose watch output>>>");
-                            listener.getLogger().println(line);
-                            listener.getLogger().println("<<<");
-                        }
-                        for (; ; ) {
-                            listener.getLogger().println("Running watch closure body");
-                            try {
-                                // Run body and get result
-                                Object o = getContext().newBodyInvoker().start().get();
-
-                                // If the watch body returns a Boolean and it is true, time to exit
-                                if (o instanceof Boolean && (Boolean) o) {
-                                    watchSuccess[0] = true;
-                                    listener.getLogger().println("\nwatch closure returned true; terminating watch");
-                                    return true; // interrupt `oc`
-                                }
-                                listener.getLogger().println("watch closure returned " + o);
-                                return false; // don't interrupt `oc`
-                            } catch (groovy.json.JsonException ex) {
-                                // FIXME: We've seen instances where if the watch closer subsequently calls oc and it processes output
-                                // before oc has finished updating it we can get json formatting
-                                // exceptions processing the output ... we can retry here
-                                if (jsonRetries[0]++ >= 5) {
-                                    throw ex; // give up retrying
-                                }
-                                listener.getLogger().println("watch closer got json formatting exception, trying again");
-                            } catch (InterruptedException tie) { // timeout{} block interrupted us
-                                listener.getLogger().println("\nwatch closure interrupted (timeout?)");
-                                throw tie;
-                            } catch (Throwable t) {
-                                String exceptionMsgs = t.getMessage();
-                                if (t.getCause() != null) {
-                                    exceptionMsgs = exceptionMsgs + "; " + t.getCause().getMessage();
-                                }
-                                listener.getLogger().println(String.format("%nwatch closure threw an exception: \"%s\".%n", exceptionMsgs));
-                                throw new IOException(t);
-                            }
-                        }
-                    },
-                    line -> { // got a line from stderr
-                        stderr.append(line).append('\n');
-                        listener.getLogger().println("Received error output>>>");
-                        listener.getLogger().println(line);
-                        listener.getLogger().println("<<<");
-                        return false; // don't interrupt `oc`
-                    });
-            long reWatchSleep = 250;
+            // events only get recorded by the shared watch; the closure runs once per batch of them, on this thread
+            final WatchEventCoalescer events = new WatchEventCoalescer();
             try {
                 for (; ; ) {
-                    int exitStatus = runner.run(launcher);
-                    if (watchSuccess[0])
-                        break;
-                    if (exitStatus != 0) {
-                        String msg = "OpenShift Client exited with status code " + Integer.toString(exitStatus)
-                                + ", command: " + step.cmdBuilder.buildCommand(true)
-                                + ", stderr: " + stderr.toString().trim();
-                        throw new AbortException(msg);
+                    WatchHub.Source source = new WatchHub.Source(step.cmdBuilder,
+                            resumePath(step.watchKind, step.cmdBuilder.project, step.watchName, step.watchLabels),
+                            filePath, launcher, envVars);
+                    Throwable failure;
+                    boolean owner;
+                    try (WatchHub.Subscription subscription = WatchHub.subscribe(source, events, listener, step.watchLoglevel > 0)) {
+                        int batch;
+                        while ((batch = subscription.awaitBatch()) > 0) {
+                            if (batch > 1 && step.watchLoglevel > 0) {
+                                listener.getLogger().println("Coalesced " + batch + " watch events");
+                            }
+                            if (runBody()) {
+                                // leaving the subscription stops `oc` unless other watches still share it
+                                return null;
+                            }
+                        }
+                        failure = subscription.getFailure();
+                        owner = subscription.isOwner();
                     }
-                    listener.getLogger().println("Checking watch output and running watch closure again in " + reWatchSleep + "ms");
-                    Thread.sleep(reWatchSleep);
-                    if (reWatchSleep < 10000) { // Gradually re-watch less frequently
-                        reWatchSleep *= 1.2f;
+                    if (failure == null || owner) {
+                        throw failure != null ? failure : new AbortException("watch ended unexpectedly");
                     }
+                    // the watch was run for another build, in its context; start one of our own
+                    listener.getLogger().println("Shared watch ended (" + failure.getMessage() + "); watching again");
                 }
             } catch (Throwable e) {
                 getContext().onFailure(e);
+            } finally {
+                listener.getLogger().println("watch received " + events.getReceived() + " events, ran the closure for "
+                        + events.getBatches() + " batches of them (" + events.getCoalesced() + " events coalesced)");
             }
             return null;
         }
+
+        /***
+         * Runs the watch closure once.
+         * @return true if the closure is satisfied and the watch is over
+         */
+        private boolean runBody() throws IOException, InterruptedException {
+            int jsonRetries = 0;
+            for (; ; ) {
+                listener.getLogger().println("Running watch closure body");
+                try {
+                    // Run body and get result
+                    Object o = getContext().newBodyInvoker().start().get();
+
+                    // If the watch body returns a Boolean and it is true, time to exit
+                    if (o instanceof Boolean && (Boolean) o) {
+                        listener.getLogger().println("\nwatch closure returned true; terminating watch");
+                        return true;
+                    }
+                    listener.getLogger().println("watch closure returned " + o);
+                    return false;
+                } catch (groovy.json.JsonException ex) {
+                    // FIXME: We've seen instances where if the watch closer subsequently calls oc and it processes output
+                    // before oc has finished updating it we can get json formatting
+                    // exceptions processing the output ... we can retry here
+                    if (jsonRetries++ >= 5) {
+                        throw ex; // give up retrying
+                    }
+                    listener.getLogger().println("watch closer got json formatting exception, trying again");
+                } catch (InterruptedException tie) { // timeout{} block interrupted us
+                    listener.getLogger().println("\nwatch closure interrupted (timeout?)");
+                    throw tie;
+                } catch (Throwable t) {
+                    String exceptionMsgs = t.getMessage();
+                    if (t.getCause() != null) {
+                        exceptionMsgs = exceptionMsgs + "; " + t.getCause().getMessage();
+                    }
+                    listener.getLogger().println(String.format("%nwatch closure threw an exception: \"%s\".%n", exceptionMsgs));
+                    throw new IOException(t);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,111 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.model.Run;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/***
+ * {@link BlobStore} keeps content such as the object markup fed to `oc ... -f -` in the build directory, in gzip
+ * compressed files named after the SHA-256 of the content. Step arguments and results then carry a short reference,
+ * "sha256:" followed by the digest, instead of the content itself, and identical content is stored once per build.
+ * The files go away with the build.
+ */
+public final class BlobStore {
+
+    public static final String PREFIX = "sha256:";
+
+    private static final String DIRECTORY = "openshift-client" + File.separator + "blobs";
+
+    private BlobStore() {
+    }
+
+    /***
+     * @return the directory holding the blobs of run
+     */
+    public static File directory(Run<?, ?> run) {
+        return new File(run.getRootDir(), DIRECTORY);
+    }
+
+    /***
+     * @return whether s is a reference returned by {@link #put(File, String)}
+     */
+    public static boolean isReference(String s) {
+        if (s == null || s.length() != PREFIX.length() + 64 || !s.startsWith(PREFIX)) {
+            return false;
+        }
+        for (int i = PREFIX.length(); i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Stores content, unless the same content is already stored.
+     * @param dir the directory of the blobs, see {@link #directory(Run)}
+     * @param content the content to store
+     * @return the reference to the content
+     */
+    public static String put(File dir, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String digest = CertificateCache.digest(bytes);
+        Path file = dir.toPath().resolve(digest + ".gz");
+        if (Files.isRegularFile(file)) {
+            return PREFIX + digest;
+        }
+        Files.createDirectories(dir.toPath());
+        // write aside and move into place, so that a concurrent step never reads a partial file
+        Path tmp = Files.createTempFile(dir.toPath(), "blob", ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(bytes);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // stored by a concurrent step in the meantime
+            } catch (IOException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return PREFIX + digest;
+    }
+
+    /***
+     * @param dir the directory of the blobs, see {@link #directory(Run)}
+     * @param reference a reference returned by {@link #put(File, String)}
+     * @return the content, or null if reference is not a reference or its content is not stored in dir
+     */
+    public static String get(File dir, String reference) throws IOException {
+        if (!isReference(reference)) {
+            return null;
+        }
+        Path file = dir.toPath().resolve(reference.substring(PREFIX.length()) + ".gz");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,213 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+/***
+ * {@link CapturedOutput} is a serializable handle on the output of an `oc` invocation collected by {@link OutputCapture}.
+ * Small outputs are held inline; larger outputs stay in the file they were spilled to and are only read when asked for.
+ * <p>
+ * The handle is part of the pipeline's program state, which is saved at every step boundary, so a spilled output keeps
+ * only a short preview inline. Spill files are gzip compressed; files written by earlier versions of the plugin are not,
+ * which is why the handle records how its file was written.
+ */
+public final class CapturedOutput implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final CapturedOutput EMPTY = new CapturedOutput("", null, 0);
+
+    private final String text;
+    private final String path;
+    private final long length;
+    // the start of a spilled output, see OutputCapture; null for inline output
+    private final String preview;
+    private final boolean compressed;
+
+    // byte spans of secret data, see ClientCommandOutputCleaner.Redactor; null until located
+    private long[] redactions;
+
+    private transient SoftReference<String> materialized;
+    private transient SoftReference<String> redacted;
+
+    private CapturedOutput(String text, String path, long length, String preview, boolean compressed) {
+        this.text = text;
+        this.path = path;
+        this.length = length;
+        this.preview = preview;
+        this.compressed = compressed;
+    }
+
+    private CapturedOutput(String text, String path, long length) {
+        this(text, path, length, null, false);
+    }
+
+    public static CapturedOutput ofString(String text) {
+        if (text == null || text.isEmpty()) {
+            return EMPTY;
+        }
+        return new CapturedOutput(text, null, text.length());
+    }
+
+    static CapturedOutput ofFile(File file, long length, String preview) {
+        return new CapturedOutput(null, file.getAbsolutePath(), length, preview, true);
+    }
+
+    CapturedOutput withRedactions(long[] spans) {
+        if (this == EMPTY) {
+            return EMPTY;
+        }
+        CapturedOutput c = new CapturedOutput(text, path, length, preview, compressed);
+        c.redactions = spans;
+        return c;
+    }
+
+    /***
+     * @return true if the content lives in a file rather than inline
+     */
+    public boolean isSpilled() {
+        return path != null;
+    }
+
+    /***
+     * @return the number of bytes of a spilled output, or the number of characters of an inline one
+     */
+    public long length() {
+        return length;
+    }
+
+    /***
+     * @return the file holding the content, or null if it is held inline
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /***
+     * @return the start of the content, without reading a spill file; the whole content if it is held inline
+     */
+    public String getPreview() {
+        if (path == null) {
+            return text;
+        }
+        return preview == null ? "" : preview;
+    }
+
+    /***
+     * Opens the content as a stream of UTF-8 characters without materializing it as a String.
+     * @return a reader over the content
+     * @throws IOException when the spill file cannot be opened
+     */
+    public Reader openReader() throws IOException {
+        if (path == null) {
+            return new StringReader(text);
+        }
+        return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+    }
+
+    /***
+     * @return the UTF-8 encoded content
+     * @throws IOException when the spill file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+        if (path == null) {
+            return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        }
+        InputStream in = Files.newInputStream(new File(path).toPath());
+        return compressed ? new GZIPInputStream(in, 8192) : in;
+    }
+
+    /***
+     * Materializes the content. Spilled content is cached softly so repeated reads do not hit the disk, while the
+     * garbage collector can still reclaim it under memory pressure.
+     * @return the content as a String
+     * @throws IOException when the spill file cannot be read
+     */
+    public String asString() throws IOException {
+        if (path == null) {
+            return text;
+        }
+        String s = materialized != null ? materialized.get() : null;
+        if (s == null) {
+            try (InputStream in = openStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE - 8));
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                s = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw unreadable(e);
+            }
+            materialized = new SoftReference<>(s);
+        }
+        return s;
+    }
+
+    /***
+     * Materializes the content with secret data replaced, as {@link ClientCommandOutputCleaner#redactSensitiveData(String)}
+     * would. Content which was captured with {@link OutputCapture#redactingSecrets()} is not searched again, and
+     * content without secret data is returned as is; either way the result is cached.
+     * @return the redacted content as a String
+     * @throws IOException when the spill file cannot be read
+     */
+    public String asRedactedString() throws IOException {
+        try {
+            long[] spans = redactions;
+            if (spans == null) {
+                ClientCommandOutputCleaner.Redactor redactor = new ClientCommandOutputCleaner.Redactor();
+                try (InputStream in = openStream()) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        redactor.update(buffer, 0, n);
+                    }
+                }
+                spans = redactor.finish();
+                redactions = spans;
+            }
+            if (spans.length == 0) {
+                return asString();
+            }
+            String s = redacted != null ? redacted.get() : null;
+            if (s == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (InputStream in = openStream()) {
+                    ClientCommandOutputCleaner.Redactor.apply(in, spans, out);
+                }
+                s = new String(out.toByteArray(), StandardCharsets.UTF_8);
+                redacted = new SoftReference<>(s);
+            }
+            return s;
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    // spilled output which cannot be read back must not pass for empty output
+    private IOException unreadable(IOException e) {
+        return new IOException("unable to read captured oc output from " + path
+                + "; it may have been removed with the build directory", e);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return asString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * {@link CertificateCache} keeps the certificate authorities handed to `oc` in files named after the SHA-256 of their
+ * content, in a directory of the agent's temporary directory rather than in the workspace. A CA is written once per
+ * agent and then shared by every build and every withCluster using it, instead of being written to and deleted from
+ * the workspace each time.
+ * <p>
+ * The directory is created accessible to its owner only, and is refused if it is owned by another user or is a
+ * symbolic link, since whoever controls it could swap the CA `oc` trusts. For the same reason a file found in the
+ * cache is only used if its content is that of the CA; otherwise it is written again.
+ * <p>
+ * Each use marks the file as recently used. Once there are more than {@link #MAX_ENTRIES} files, the least recently
+ * used ones are removed, except those used within the last {@link #MIN_IDLE_MILLIS}. Since a path is resolved once
+ * per withCluster or freestyle build, which may well last longer than that, {@link #verify} is called before each
+ * `oc` run: it marks the file as used again, or stores it again if it was removed after all.
+ */
+public final class CertificateCache {
+
+    static final int MAX_ENTRIES = 64;
+    static final long MIN_IDLE_MILLIS = 60 * 60 * 1000L;
+
+    private static final String DIRECTORY = "openshift-client-plugin-ca";
+
+    // how often verify asks an agent about a file; well below MIN_IDLE_MILLIS, so a file in use is never evicted
+    static final long VERIFY_MILLIS = MIN_IDLE_MILLIS / 4;
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    // path -> content of the files stored from this controller, so that they can be stored again
+    private static final Map<String, String> CONTENTS = new ConcurrentHashMap<String, String>();
+    // agent and path -> when the file was last known to be in place
+    private static final Map<String, Long> VERIFIED = new ConcurrentHashMap<String, Long>();
+
+    private CertificateCache() {
+    }
+
+    /***
+     * @param filePath any path on the agent which will run `oc`
+     * @param content the PEM content of the certificate authority
+     * @return the path of the file holding content on that agent
+     */
+    public static String getPath(FilePath filePath, String content) throws IOException, InterruptedException {
+        String path = filePath.act(new Store(content));
+        CONTENTS.put(path, content);
+        String key = verifiedKey(filePath, path);
+        if (key != null) {
+            VERIFIED.put(key, System.currentTimeMillis());
+        }
+        return path;
+    }
+
+    /***
+     * Makes sure the file returned by {@link #getPath} is still in place before `oc` is run with it, storing it again
+     * if needed, and marks it as used. The agent is asked at most every {@link #VERIFY_MILLIS} per file. Paths which
+     * were not returned by {@link #getPath} on this controller, such as the CA of the service account, are left
+     * alone.
+     * @param filePath any path on the agent which will run `oc`
+     * @param path the path passed to `oc`, or null
+     */
+    public static void verify(FilePath filePath, String path) throws IOException, InterruptedException {
+        String content = path == null ? null : CONTENTS.get(path);
+        if (content == null) {
+            return;
+        }
+        String key = verifiedKey(filePath, path);
+        long now = System.currentTimeMillis();
+        Long verified = key == null ? null : VERIFIED.get(key);
+        if (verified != null && now - verified < VERIFY_MILLIS) {
+            return;
+        }
+        filePath.act(new Store(content));
+        if (key != null) {
+            VERIFIED.put(key, now);
+        }
+    }
+
+    /***
+     * @return the content of the file at path if it was stored from this controller, else null
+     */
+    public static String getContent(String path) {
+        return path == null ? null : CONTENTS.get(path);
+    }
+
+    // null if the agent is not known, in which case it is asked every time
+    private static String verifiedKey(FilePath filePath, String path) {
+        Computer computer = filePath.toComputer();
+        return computer == null ? null : computer.getName() + "\n" + path;
+    }
+
+    static String digest(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 is always available
+        }
+    }
+
+    /***
+     * Finds or writes the file for a CA, on the agent.
+     */
+    private static final class Store extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String content;
+
+        Store(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return store(Paths.get(System.getProperty("java.io.tmpdir")), content, System.currentTimeMillis()).toString();
+        }
+    }
+
+    /***
+     * Finds or writes the file for a CA in the cache directory of tmpdir, on the agent.
+     * @return the file holding content
+     */
+    static Path store(Path tmpdir, String content, long millis) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Path dir = directory(tmpdir);
+        Path file = dir.resolve(digest(bytes) + ".crt");
+        FileTime now = FileTime.fromMillis(millis);
+        if (holds(file, bytes)) {
+            Files.setLastModifiedTime(file, now);
+            return file;
+        }
+        // write aside and move into place, so that a concurrent build never reads a partial file
+        Path tmp = Files.createTempFile(dir, "ca", ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // written by a concurrent build in the meantime
+            } catch (IOException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        if (!holds(file, bytes)) {
+            throw new IOException("unable to store the certificate authority in " + file);
+        }
+        Files.setLastModifiedTime(file, now);
+        evict(dir, now.toMillis());
+        return file;
+    }
+
+    // whether file is a regular file holding exactly content
+    private static boolean holds(Path file, byte[] content) throws IOException {
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || Files.size(file) != content.length) {
+            return false;
+        }
+        return MessageDigest.isEqual(Files.readAllBytes(file), content);
+    }
+
+    /***
+     * @return the cache directory, created for the user running the agent if missing
+     * @throws IOException if the directory belongs to another user or is not a plain directory
+     */
+    private static Path directory(Path tmpdir) throws IOException {
+        Path dir = tmpdir.resolve(DIRECTORY);
+        boolean posix = Files.getFileAttributeView(tmpdir, PosixFileAttributeView.class) != null;
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                if (posix) {
+                    Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectory(dir);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // created by a concurrent build; checked below like any existing directory
+            }
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("refusing to use " + dir + " for certificate authorities, it is not a directory");
+        }
+        // the owner of a file just created is the user running the agent
+        UserPrincipal self;
+        Path probe = Files.createTempFile(tmpdir, "openshift-client-plugin", ".tmp");
+        try {
+            self = Files.getOwner(probe);
+        } finally {
+            Files.deleteIfExists(probe);
+        }
+        UserPrincipal owner = Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS);
+        if (!owner.equals(self)) {
+            throw new IOException("refusing to use " + dir + " for certificate authorities, it is owned by "
+                    + owner.getName() + " rather than " + self.getName());
+        }
+        if (posix && !Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(OWNER_ONLY)) {
+            Files.setPosixFilePermissions(dir, OWNER_ONLY);
+        }
+        return dir;
+    }
+
+    private static void evict(Path dir, long now) throws IOException {
+        final Map<Path, Long> lastUsed = new HashMap<Path, Long>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.crt")) {
+            for (Path p : stream) {
+                lastUsed.put(p, lastUsed(p));
+            }
+        }
+        if (lastUsed.size() <= MAX_ENTRIES) {
+            return;
+        }
+        List<Path> files = new ArrayList<Path>(lastUsed.keySet());
+        files.sort(Comparator.comparing(lastUsed::get));
+        for (int i = 0; i < files.size() - MAX_ENTRIES; i++) {
+            if (now - lastUsed.get(files.get(i)) < MIN_IDLE_MILLIS) {
+                break;
+            }
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private static long lastUsed(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE; // removed meanwhile; leave it alone
+        }
+    }
+}
@@ -80,12 +80,16 @@ public class ClientCommandBuilder implements Serializable {
 		 * var and do 1)
 		 */
 
-		OsType targetType = filePath.act(new GetOsType());
 		String path = envVars.get("PATH");
+		OsType targetType;
 		List<String> foundOcs;
-		FindOC finder = new FindOC(path);
 		try {
-			foundOcs = filePath.act(finder);
+			// cached per agent and PATH; see OcLocator
+			OcLocator.Location location = OcLocator.locate(filePath, path);
+			targetType = location.getOsType();
+			foundOcs = location.getOcs();
+		} catch (InterruptedException e) {
+			throw e;
 		} catch (Throwable t) {
 			t.printStackTrace(listener.getLogger());
 			return command;
@@ -126,6 +130,15 @@ public class ClientCommandBuilder implements Serializable {
 		this.streamStdOutToConsolePrefix = streamStdOutToConsolePrefix;
 	}
 
+	/**
+	 * @return a builder for another invocation against the same cluster, project
+	 *         and credentials
+	 */
+	public ClientCommandBuilder withVerb(String verb, List<String> verbArgs) {
+		return new ClientCommandBuilder(server, project, skipTLSVerify, caPath, verb, advArgs, verbArgs, null, null,
+				token, logLevel, false);
+	}
+
 	private String dealWithQuotes(String s) {
 		// So, if the arg that comes in either
 		// a) has neither ' or "", or
@@ -318,6 +331,16 @@ public class ClientCommandBuilder implements Serializable {
 			}
 		}
 
+		cmd.addAll(buildVerbArguments());
+		return cmd;
+	}
+
+	/**
+	 * @return the verb followed by its arguments, i.e. the command line without the
+	 *         tool name and the connection arguments
+	 */
+	List<String> buildVerbArguments() {
+		ArrayList<String> cmd = new ArrayList<String>();
 		cmd.add(verb);
 		cmd.addAll(toStringArray(verbArgs));
 		cmd.addAll(toStringArray(userArgs));
@@ -0,0 +1,214 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * {@link ClientCommandExecutor} owns the threads {@link ClientCommandRunner} uses to consume `oc` output and
+ * the bulkheads which limit how many `oc` processes may run at once for a cluster.
+ * <p>
+ * Short commands (get, apply, ...) and long-lived streams (watches, logs -f, ...) are admitted through
+ * separate bulkheads so that streams which run for hours cannot starve ordinary commands.
+ * <p>
+ * Tuned with the following environment variables on the controller:
+ * <ul>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_MODE - fixed, elastic (default) or virtual</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_POOL_SIZE - thread count in fixed mode; setting it selects fixed mode</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_SHORT_COMMAND_LIMIT - concurrent short commands per cluster, 0 for no limit</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_STREAM_COMMAND_LIMIT - concurrent streaming commands per cluster, 0 for no limit</li>
+ * </ul>
+ */
+public final class ClientCommandExecutor {
+    private static final Logger LOGGER = Logger.getLogger(ClientCommandExecutor.class.getName());
+
+    public enum Mode {
+        FIXED, ELASTIC, VIRTUAL
+    }
+
+    public enum Workload {
+        SHORT, STREAM
+    }
+
+    private static final Mode mode;
+    private static final ExecutorService pool;
+    private static final int shortCommandLimit = EnvSettings.getInt("OPENSHIFT_CLIENT_PLUGIN_SHORT_COMMAND_LIMIT", 25);
+    private static final int streamCommandLimit = EnvSettings.getInt("OPENSHIFT_CLIENT_PLUGIN_STREAM_COMMAND_LIMIT", 50);
+    private static final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    static {
+        int poolSize = EnvSettings.getInt("OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_POOL_SIZE", -1);
+        String requested = EnvSettings.getString("OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_MODE", poolSize > 0 ? "fixed" : "elastic");
+        Mode m;
+        try {
+            m = Mode.valueOf(requested.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "unknown OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_MODE " + requested + ", using elastic");
+            m = Mode.ELASTIC;
+        }
+        ExecutorService p = null;
+        if (m == Mode.VIRTUAL) {
+            p = newVirtualThreadExecutor();
+            if (p == null) {
+                LOGGER.log(Level.WARNING, "virtual threads are not available in this JVM, using elastic executor mode");
+                m = Mode.ELASTIC;
+            }
+        }
+        if (m == Mode.FIXED) {
+            p = Executors.newFixedThreadPool(poolSize > 0 ? poolSize : 25, threadFactory());
+        } else if (m == Mode.ELASTIC) {
+            // threads are cheap to keep around for a minute; the bulkheads, not the pool, bound concurrency
+            p = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory());
+        }
+        mode = m;
+        pool = p;
+        LOGGER.log(Level.FINE, "ClientCommandExecutor mode " + mode + ", short command limit " + shortCommandLimit
+                + ", stream command limit " + streamCommandLimit);
+    }
+
+    private ClientCommandExecutor() {
+    }
+
+    private static NamingThreadFactory threadFactory() {
+        return new NamingThreadFactory(new DaemonThreadFactory(), "OpenShift client command runner");
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        // the plugin is compiled for Java 17, so look the Java 21 factory up reflectively
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "newVirtualThreadPerTaskExecutor", e);
+            return null;
+        }
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    static ExecutorService getPool() {
+        return pool;
+    }
+
+    /***
+     * Waits for a slot in the bulkhead of the given workload and cluster.
+     * @param workload the kind of command about to be run
+     * @param cluster the API server the command talks to, null for the default cluster
+     * @return a {@link Permit} which must be closed once the command has finished
+     * @throws InterruptedException when interrupted while waiting for a slot
+     */
+    public static Permit acquire(Workload workload, String cluster) throws InterruptedException {
+        String key = (cluster == null ? "default" : cluster) + " [" + workload.name().toLowerCase(Locale.ENGLISH) + "]";
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(key,
+                k -> new Bulkhead(workload == Workload.STREAM ? streamCommandLimit : shortCommandLimit));
+        return bulkhead.acquire();
+    }
+
+    /***
+     * Returns the queue-depth and wait-time gauges of every bulkhead, keyed by cluster and workload.
+     * The numbers can be inspected from the script console, e.g.
+     * <code>com.openshift.jenkins.plugins.util.ClientCommandExecutor.getStatistics()</code>
+     * @return a snapshot of the bulkhead gauges
+     */
+    public static Map<String, Map<String, Long>> getStatistics() {
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        for (Map.Entry<String, Bulkhead> e : bulkheads.entrySet()) {
+            stats.put(e.getKey(), e.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private static final class Bulkhead {
+        private final int limit;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Bulkhead(int limit) {
+            this.limit = limit;
+            this.permits = limit > 0 ? new Semaphore(limit, true) : null;
+        }
+
+        Permit acquire() throws InterruptedException {
+            long start = System.nanoTime();
+            if (permits != null) {
+                waiting.incrementAndGet();
+                try {
+                    permits.acquire();
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+            long waited = System.nanoTime() - start;
+            running.incrementAndGet();
+            admitted.incrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            return new Permit(this, waited);
+        }
+
+        void release() {
+            running.decrementAndGet();
+            if (permits != null)
+                permits.release();
+        }
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> m = new TreeMap<>();
+            long count = admitted.get();
+            m.put("limit", (long) limit);
+            m.put("queueDepth", (long) waiting.get());
+            m.put("running", (long) running.get());
+            m.put("admitted", count);
+            m.put("totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+            m.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+            m.put("averageWaitMillis", count == 0 ? 0L : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count));
+            return m;
+        }
+    }
+
+    /***
+     * A slot in a bulkhead; closing it lets the next queued command run.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Bulkhead bulkhead;
+        private final long waitNanos;
+        private boolean released;
+
+        private Permit(Bulkhead bulkhead, long waitNanos) {
+            this.bulkhead = bulkhead;
+            this.waitNanos = waitNanos;
+        }
+
+        public long getWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                bulkhead.release();
+            }
+        }
+    }
+}
@@ -1,7 +1,282 @@
 package com.openshift.jenkins.plugins.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 public class ClientCommandOutputCleaner {
-    public static String redactSensitiveData(final String output){
-        return output.replaceAll("(\"data\":)\\{(.*?)\\}", "$1{ REDACTED }");
+
+    static final byte[] REDACTED = "{ REDACTED }".getBytes(StandardCharsets.UTF_8);
+
+    public static String redactSensitiveData(final String output) {
+        if (output == null) {
+            return null;
+        }
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        Redactor redactor = new Redactor();
+        redactor.update(bytes, 0, bytes.length);
+        long[] spans = redactor.finish();
+        if (spans.length == 0) {
+            return output;
+        }
+        ByteArrayOutputStream redacted = new ByteArrayOutputStream(bytes.length);
+        try {
+            Redactor.apply(new ByteArrayInputStream(bytes), spans, redacted);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by byte array streams
+        }
+        return new String(redacted.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /***
+     * {@link RedactingOutputStream} redacts output on its way to another stream, for output which is shown as it
+     * arrives rather than once the command has ended. Bytes are passed on as soon as it is known that they are not
+     * part of a <code>"data":{...}</code> object, so the result is the same as that of {@link #redactSensitiveData}.
+     * Not thread safe; use one per stream of output.
+     */
+    public static final class RedactingOutputStream extends FilterOutputStream {
+        private final Redactor redactor = new Redactor();
+        private boolean marked;
+
+        public RedactingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (redactor.redacts((byte) b)) {
+                if (!marked) {
+                    out.write(REDACTED);
+                    marked = true;
+                }
+            } else {
+                marked = false;
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // bytes that are not redacted are passed on in runs, not one at a time
+            int run = off;
+            for (int i = off; i < off + len; i++) {
+                if (redactor.redacts(b[i])) {
+                    if (i > run) {
+                        out.write(b, run, i - run);
+                    }
+                    run = i + 1;
+                    if (!marked) {
+                        out.write(REDACTED);
+                        marked = true;
+                    }
+                } else {
+                    marked = false;
+                }
+            }
+            if (off + len > run) {
+                out.write(b, run, off + len - run);
+            }
+        }
+    }
+
+    /***
+     * {@link Redactor} finds the <code>"data":{...}</code> objects of secrets (and of config maps) in output as it
+     * streams by, so that it can be redacted later without searching it again. It follows the nesting of braces
+     * and ignores braces inside strings. Objects embedded as escaped JSON in a string, as in the
+     * last-applied-configuration annotation (<code>\"data\":{\"k\":\"v\"}</code>), are found too.
+     * <p>
+     * The positions found are byte offsets of the output, given as pairs of start (inclusive) and end (exclusive).
+     * An object still open when the output ends is redacted up to the end.
+     */
+    public static final class Redactor {
+        private static final byte[] KEY = "\"data\"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] ESCAPED_KEY = "\\\"data\\\"".getBytes(StandardCharsets.UTF_8);
+
+        private static final int SCAN = 0;
+        private static final int AFTER_COLON = 1;
+        private static final int BODY = 2;
+
+        private final byte[] recent = new byte[ESCAPED_KEY.length];
+        private int recentCount;
+
+        private int state = SCAN;
+        private boolean escaped; // the object is JSON escaped inside a string
+        private boolean pendingBackslash; // escaped mode: the previous byte started an escape sequence
+        private boolean inString;
+        private boolean stringEscape;
+        private int depth;
+        private long start;
+        private long offset;
+
+        private long[] spans = new long[0];
+        private int spanCount;
+
+        public void update(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                update(b[i]);
+                offset++;
+            }
+        }
+
+        private void update(byte b) {
+            switch (state) {
+            case SCAN:
+                if (b == ':') {
+                    escaped = endsWith(ESCAPED_KEY);
+                    if (escaped || endsWith(KEY)) {
+                        state = AFTER_COLON;
+                    }
+                }
+                remember(b);
+                break;
+            case AFTER_COLON:
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b == '{') {
+                    state = BODY;
+                    start = offset;
+                    depth = 1;
+                    inString = false;
+                    stringEscape = false;
+                    pendingBackslash = false;
+                } else {
+                    state = SCAN; // not an object, e.g. "data": null
+                    remember(b);
+                }
+                break;
+            default:
+                if (!escaped) {
+                    body(b);
+                } else if (pendingBackslash) {
+                    pendingBackslash = false;
+                    body(b); // \" and \\ stand for " and \ in the embedded JSON
+                } else if (b == '\\') {
+                    pendingBackslash = true;
+                } else if (b == '"') {
+                    // the enclosing string ended before the object did
+                    close(offset);
+                } else {
+                    body(b);
+                }
+            }
+        }
+
+        private void body(byte b) {
+            if (inString) {
+                if (stringEscape) {
+                    stringEscape = false;
+                } else if (b == '\\') {
+                    stringEscape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                return;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                close(offset + 1);
+            }
+        }
+
+        private void close(long end) {
+            if (spanCount + 2 > spans.length) {
+                spans = Arrays.copyOf(spans, Math.max(4, spans.length * 2));
+            }
+            spans[spanCount++] = start;
+            spans[spanCount++] = end;
+            state = SCAN;
+            recentCount = 0;
+        }
+
+        private void remember(byte b) {
+            if (recentCount == recent.length) {
+                System.arraycopy(recent, 1, recent, 0, recent.length - 1);
+                recentCount--;
+            }
+            recent[recentCount++] = b;
+        }
+
+        private boolean endsWith(byte[] suffix) {
+            if (recentCount < suffix.length) {
+                return false;
+            }
+            for (int i = 0; i < suffix.length; i++) {
+                if (recent[recentCount - suffix.length + i] != suffix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /***
+         * Feeds the next byte of output.
+         * @return whether the byte is to be redacted; known straight away, since an object starts with its brace
+         */
+        boolean redacts(byte b) {
+            boolean before = state == BODY;
+            int spansBefore = spanCount;
+            update(b);
+            offset++;
+            if (state == BODY) {
+                return true;
+            }
+            // the byte may have closed the object; the closing quote of an enclosing string is not part of it
+            return before && spanCount > spansBefore && spans[spanCount - 1] == offset;
+        }
+
+        /***
+         * @return the spans to redact, as start/end pairs of byte offsets
+         */
+        public long[] finish() {
+            if (state == BODY) {
+                close(offset);
+            }
+            state = SCAN;
+            return Arrays.copyOf(spans, spanCount);
+        }
+
+        /***
+         * Copies in to out, replacing each span with <code>{ REDACTED }</code>.
+         */
+        public static void apply(InputStream in, long[] spans, OutputStream out) throws IOException {
+            byte[] buffer = new byte[8192];
+            long position = 0;
+            int span = 0;
+            boolean marked = false;
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                int i = 0;
+                while (i < n) {
+                    if (span < spans.length && position >= spans[span]) {
+                        if (!marked) {
+                            out.write(REDACTED);
+                            marked = true;
+                        }
+                        int skip = (int) Math.min(n - i, spans[span + 1] - position);
+                        i += skip;
+                        position += skip;
+                        if (position >= spans[span + 1]) {
+                            span += 2;
+                            marked = false;
+                        }
+                    } else {
+                        long next = span < spans.length ? spans[span] : Long.MAX_VALUE;
+                        int copy = (int) Math.min(n - i, next - position);
+                        out.write(buffer, i, copy);
+                        i += copy;
+                        position += copy;
+                    }
+                }
+            }
+        }
     }
 }
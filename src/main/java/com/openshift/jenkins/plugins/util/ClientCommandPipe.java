@@ -0,0 +1,96 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/***
+ * {@link ClientCommandPipe} runs two `oc` commands on an agent with the stdout of the first connected to the stdin of
+ * the second, as in <code>oc process ... | oc apply -f -</code>. The output passed between them never leaves the
+ * agent; only the output of the second command and the stderr of both come back to the controller, streamed as they
+ * are produced.
+ * <p>
+ * The pipe is a single <code>sh -c</code> command started through the launcher of the step, so launcher decorators,
+ * such as that of the <code>container</code> step, apply to it as they apply to any other `oc` command.
+ * <p>
+ * Windows agents have no <code>sh</code>; there the first command is run to completion and its output is then fed
+ * to the second, passing through the controller on the way.
+ */
+public final class ClientCommandPipe {
+
+    // runs "$producer | $consumer" and exits with the status of the producer if it failed, else with that of the
+    // consumer; POSIX sh has no pipefail, so the producer's status is passed out of the pipe on file descriptor 3
+    private static final String SCRIPT = "exec 4>&1\n"
+            + "s=$( { { %s 3>&- 4>&-; echo $? >&3; } | %s 3>&- >&4 4>&-; } 3>&1 ); c=$?\n"
+            + "[ \"$s\" -ne 0 ] && exit \"$s\"\n"
+            + "exit \"$c\"\n";
+
+    private ClientCommandPipe() {
+    }
+
+    /***
+     * @param launcher the launcher to start the commands with
+     * @param filePath the directory to run the commands in, on the agent
+     * @param envVars environment variables
+     * @param stdin input for the first command, or null for none
+     * @param producer the first command
+     * @param consumer the second command, reading the output of the first
+     * @param cluster the API server the commands talk to; selects the bulkhead the commands wait in
+     * @param stdout receives the stdout of the second command
+     * @param stderr receives the stderr of both commands
+     * @return the exit status of the first command if it failed, else that of the second
+     */
+    public static int run(Launcher launcher, FilePath filePath, EnvVars envVars, byte[] stdin, String[] producer,
+                          String[] consumer, String cluster, OutputStream stdout, OutputStream stderr)
+            throws IOException, InterruptedException {
+        try (ClientCommandExecutor.Permit permit = ClientCommandExecutor.acquire(ClientCommandExecutor.Workload.SHORT, cluster)) {
+            if (!launcher.isUnix()) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                int status = launch(launcher, filePath, envVars, stdin, producer, output, stderr);
+                if (status != 0) {
+                    return status;
+                }
+                return launch(launcher, filePath, envVars, output.toByteArray(), consumer, stdout, stderr);
+            }
+            return launch(launcher, filePath, envVars, stdin, new String[]{"sh", "-c", script(producer, consumer)},
+                    stdout, stderr);
+        }
+    }
+
+    private static int launch(Launcher launcher, FilePath filePath, EnvVars envVars, byte[] stdin, String[] command,
+                              OutputStream stdout, OutputStream stderr) throws IOException, InterruptedException {
+        // quiet, since the command lines carry the token
+        Launcher.ProcStarter ps = launcher.launch().cmds(command).envs(envVars)
+                .pwd(filePath).quiet(true).stdout(stdout).stderr(stderr);
+        ps.stdin(new ByteArrayInputStream(stdin == null ? new byte[0] : stdin));
+        Proc proc = ps.start();
+        try {
+            return proc.join();
+        } finally {
+            // on interruption, e.g. when the build is aborted
+            proc.kill();
+        }
+    }
+
+    static String script(String[] producer, String[] consumer) {
+        return String.format(SCRIPT, quote(producer), quote(consumer));
+    }
+
+    // quotes each argument for sh
+    static String quote(String[] command) {
+        StringBuilder sb = new StringBuilder();
+        for (String arg : command) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('\'').append(arg.replace("'", "'\\''")).append('\'');
+        }
+        return sb.toString();
+    }
+}
@@ -9,9 +9,6 @@ import hudson.remoting.FastPipedInputStream;
 import hudson.remoting.FastPipedOutputStream;
 import jakarta.annotation.Nonnull;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
-
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -28,19 +25,6 @@ import java.util.logging.Logger;
 public class ClientCommandRunner implements Serializable {
     private static final long serialVersionUID = 42L;
     private static final Logger LOGGER = Logger.getLogger(ClientCommandRunner.class.getName());
-    // creating a thread pool for output consumers
-    private static Executor pool;
-    static {
-        String poolSize = System.getenv("OPENSHIFT_CLIENT_PLUGIN_EXECUTOR_POOL_SIZE");
-        int ps = 25;
-        try {
-            if (poolSize != null && poolSize.trim().length() > 0)
-                ps = Integer.parseInt(poolSize);
-        } catch (Throwable t ) {
-            LOGGER.log(Level.WARNING, "ClientCommandRunner", t);
-        }
-        pool = Executors.newFixedThreadPool(ps);
-    }
 
     /***
      * a {@link OutputObserver} will be notified when {@link ClientCommandRunner} reads a new line from stdout or stderr of the running oc process
@@ -56,14 +40,67 @@ public class ClientCommandRunner implements Serializable {
         boolean onReadLine(String line) throws IOException, InterruptedException;
     }
 
+    /***
+     * a {@link ByteOutputObserver} is notified with the raw bytes of every line {@link ClientCommandRunner} reads from stdout or stderr
+     * of the running oc process. Lines are handed over straight from the read buffer, so no String is created unless the observer
+     * decodes one itself.
+     */
+    public interface ByteOutputObserver {
+        /***
+         * This method will be called every time the ClientCommandRunner reads a line from the stdout/stderr from the remote `oc` process.
+         * The buffer is reused for the following lines, so the observer must copy any bytes it wants to keep.
+         * @param buffer the read buffer holding the line
+         * @param offset index of the first byte of the line
+         * @param length number of bytes in the line, excluding the line terminator
+         * @return true to indicate the ClientCommandRunner to interrupt the `oc` process immediately.
+         * @throws IOException when I/O error
+         * @throws InterruptedException when the reading threads are interrupted
+         */
+        boolean onReadLine(byte[] buffer, int offset, int length) throws IOException, InterruptedException;
+    }
+
+    /***
+     * a {@link ChunkOutputObserver} is notified with every chunk of bytes {@link ClientCommandRunner} reads from stdout or stderr of
+     * the running oc process, as soon as it is read and before it is split into lines. Unlike the line observers, it also sees output
+     * which never ends a line, such as that of `oc get --watch -o template`.
+     */
+    public interface ChunkOutputObserver {
+        /***
+         * This method will be called every time the ClientCommandRunner reads from the stdout/stderr of the remote `oc` process.
+         * The buffer is reused for the following reads, so the observer must copy any bytes it wants to keep.
+         * @param buffer the read buffer holding the chunk
+         * @param offset index of the first byte of the chunk
+         * @param length number of bytes in the chunk
+         * @return true to indicate the ClientCommandRunner to interrupt the `oc` process immediately.
+         * @throws IOException when I/O error
+         * @throws InterruptedException when the reading threads are interrupted
+         */
+        boolean onRead(byte[] buffer, int offset, int length) throws IOException, InterruptedException;
+    }
+
+    /***
+     * Adapts a {@link OutputObserver} to the byte based API by decoding each line as UTF-8.
+     * @param observer the observer to notify with decoded lines
+     * @return a {@link ByteOutputObserver} delegating to observer
+     */
+    public static ByteOutputObserver decoding(@Nonnull OutputObserver observer) {
+        return (buffer, offset, length) -> observer.onReadLine(new String(buffer, offset, length, StandardCharsets.UTF_8));
+    }
+
     private String[] command;
     private FilePath filePath;
     private EnvVars envVars;
-    private OutputObserver stdoutOutputObserver;
-    private OutputObserver stderrOutputObserver;
+    private ByteOutputObserver stdoutOutputObserver;
+    private ByteOutputObserver stderrOutputObserver;
+    private ChunkOutputObserver stdoutChunkObserver;
+    private ChunkOutputObserver stderrChunkObserver;
+    private ClientCommandExecutor.Workload workload;
+    private String cluster;
+    private byte[] stdin;
+    private long queueWaitMillis;
 
     /***
-     * Create a new {@link ClientCommandRunner} instance.
+     * Create a new {@link ClientCommandRunner} instance for a short command against the default cluster.
      * @param command command to run OpenShift client tool
      * @param filePath current directory
      * @param envVars environment variables
@@ -72,33 +109,154 @@ public class ClientCommandRunner implements Serializable {
      */
     public ClientCommandRunner(@Nonnull String[] command, @Nonnull FilePath filePath, @Nonnull EnvVars envVars,
                                @Nonnull OutputObserver stdoutOutputObserver, @Nonnull OutputObserver stderrOutputObserver) {
+        this(command, filePath, envVars, stdoutOutputObserver, stderrOutputObserver, ClientCommandExecutor.Workload.SHORT, null);
+    }
+
+    /***
+     * Create a new {@link ClientCommandRunner} instance.
+     * @param command command to run OpenShift client tool
+     * @param filePath current directory
+     * @param envVars environment variables
+     * @param stdoutOutputObserver a {@link OutputObserver} that will be notified whenever {@link ClientCommandRunner} reads a line from stdout of `oc` process
+     * @param stderrOutputObserver a {@link OutputObserver} that will be notified whenever {@link ClientCommandRunner} reads a line from stderr of `oc` process
+     * @param workload whether the command is short or a long-lived stream; selects the bulkhead the command waits in
+     * @param cluster the API server the command talks to, null for the default cluster
+     */
+    public ClientCommandRunner(@Nonnull String[] command, @Nonnull FilePath filePath, @Nonnull EnvVars envVars,
+                               @Nonnull OutputObserver stdoutOutputObserver, @Nonnull OutputObserver stderrOutputObserver,
+                               @Nonnull ClientCommandExecutor.Workload workload, String cluster) {
+        this(command, filePath, envVars, decoding(stdoutOutputObserver), decoding(stderrOutputObserver), workload, cluster);
+    }
+
+    /***
+     * Create a new {@link ClientCommandRunner} instance whose observers receive the raw bytes of each line.
+     * @param command command to run OpenShift client tool
+     * @param filePath current directory
+     * @param envVars environment variables
+     * @param stdoutOutputObserver a {@link ByteOutputObserver} that will be notified whenever {@link ClientCommandRunner} reads a line from stdout of `oc` process
+     * @param stderrOutputObserver a {@link ByteOutputObserver} that will be notified whenever {@link ClientCommandRunner} reads a line from stderr of `oc` process
+     * @param workload whether the command is short or a long-lived stream; selects the bulkhead the command waits in
+     * @param cluster the API server the command talks to, null for the default cluster
+     */
+    public ClientCommandRunner(@Nonnull String[] command, @Nonnull FilePath filePath, @Nonnull EnvVars envVars,
+                               @Nonnull ByteOutputObserver stdoutOutputObserver, @Nonnull ByteOutputObserver stderrOutputObserver,
+                               @Nonnull ClientCommandExecutor.Workload workload, String cluster) {
         this.command = command;
         this.filePath = filePath;
         this.envVars = envVars;
         this.stdoutOutputObserver = stdoutOutputObserver;
         this.stderrOutputObserver = stderrOutputObserver;
+        this.workload = workload;
+        this.cluster = cluster;
+    }
+
+    /***
+     * Feeds input to `oc` over its stdin, e.g. markup for `oc apply -f -`. The bytes are streamed to the agent
+     * along with the process, so nothing needs to be written to its file system.
+     * @param stdin the input, or null for none
+     * @return this runner
+     */
+    public ClientCommandRunner withStdin(byte[] stdin) {
+        this.stdin = stdin;
+        return this;
+    }
+
+    /***
+     * Also hands the raw output of `oc` to chunk observers, as it is read; see {@link ChunkOutputObserver}. A stream with a
+     * chunk observer keeps its read buffer at a fixed size: a line which does not fit is reported to the line observer in pieces.
+     * @param stdout notified with the chunks read from stdout, or null
+     * @param stderr notified with the chunks read from stderr, or null
+     * @return this runner
+     */
+    public ClientCommandRunner withChunkObservers(ChunkOutputObserver stdout, ChunkOutputObserver stderr) {
+        this.stdoutChunkObserver = stdout;
+        this.stderrChunkObserver = stderr;
+        return this;
+    }
+
+    /***
+     * @return how long the last {@link #run(Launcher)} waited in its bulkhead before `oc` was started
+     */
+    public long getQueueWaitMillis() {
+        return queueWaitMillis;
     }
 
 
     private static class OcOutputConsumer implements Callable<Object> {
+        private static final int INITIAL_BUFFER_SIZE = 8192;
         private InputStream in;
-        private OutputObserver outputObserver;
+        private ByteOutputObserver outputObserver;
+        private ChunkOutputObserver chunkObserver;
 
-        public OcOutputConsumer(InputStream in, OutputObserver outputObserver) {
+        public OcOutputConsumer(InputStream in, ByteOutputObserver outputObserver, ChunkOutputObserver chunkObserver) {
             this.in = in;
             this.outputObserver = outputObserver;
+            this.chunkObserver = chunkObserver;
         }
 
+        /***
+         * Splits the stream into lines within a single reusable buffer. Like {@link BufferedReader#readLine()}, a line is
+         * terminated by \n, \r or \r\n, and a trailing line without terminator is still reported. The buffer only grows
+         * when a single line does not fit into it.
+         */
         @Override
         public Boolean call() throws IOException, InterruptedException {
-            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
-                LineIterator it = IOUtils.lineIterator(reader);
-                while (it.hasNext()) {
-                    String line = it.nextLine();
-                    if (outputObserver.onReadLine(line)) {
-                        return true; // interrupted by OutputObserver
+            try (InputStream input = in) {
+                byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+                int start = 0; // first byte of the current, incomplete line
+                int end = 0; // end of the valid data in buffer
+                boolean skipLF = false; // the last terminator was \r, so a following \n belongs to it
+                for (; ; ) {
+                    if (end == buffer.length) {
+                        if (start > 0) {
+                            System.arraycopy(buffer, start, buffer, 0, end - start);
+                            end -= start;
+                            start = 0;
+                        } else if (chunkObserver != null) {
+                            // e.g. a watch template which never ends a line; the chunk observer has seen it all already
+                            if (outputObserver.onReadLine(buffer, 0, end)) {
+                                return true;
+                            }
+                            end = 0;
+                            skipLF = false;
+                        } else {
+                            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        }
+                    }
+                    int count = input.read(buffer, end, buffer.length - end);
+                    if (count < 0) {
+                        break;
+                    }
+                    if (chunkObserver != null && chunkObserver.onRead(buffer, end, count)) {
+                        return true; // interrupted by ChunkOutputObserver
+                    }
+                    int scan = end;
+                    end += count;
+                    for (int i = scan; i < end; i++) {
+                        byte b = buffer[i];
+                        if (b != '\n' && b != '\r') {
+                            skipLF = false;
+                            continue;
+                        }
+                        if (b == '\n' && skipLF && i == start) {
+                            skipLF = false;
+                            start = i + 1;
+                            continue;
+                        }
+                        skipLF = (b == '\r');
+                        if (outputObserver.onReadLine(buffer, start, i - start)) {
+                            return true; // interrupted by OutputObserver
+                        }
+                        start = i + 1;
+                    }
+                    if (start == end) {
+                        start = 0;
+                        end = 0;
                     }
                 }
+                if (end > start) {
+                    return outputObserver.onReadLine(buffer, start, end - start);
+                }
             }
             return false;
         }
@@ -113,7 +271,16 @@ public class ClientCommandRunner implements Serializable {
      * @throws ExecutionException error when executing closures of observers
      */
     public int run(@Nonnull Launcher launcher) throws IOException, InterruptedException, ExecutionException {
-        CompletionService<Object> completionService = new ExecutorCompletionService<>(pool);
+        try (ClientCommandExecutor.Permit permit = ClientCommandExecutor.acquire(workload, cluster)) {
+            queueWaitMillis = permit.getWaitMillis();
+            if (queueWaitMillis > 0)
+                LOGGER.log(Level.FINE, "waited " + queueWaitMillis + "ms for a " + workload + " slot on " + cluster);
+            return runAdmitted(launcher);
+        }
+    }
+
+    private int runAdmitted(@Nonnull Launcher launcher) throws IOException, InterruptedException, ExecutionException {
+        CompletionService<Object> completionService = new ExecutorCompletionService<>(ClientCommandExecutor.getPool());
         Proc proc = null;
         int exitStatus = -1;
         List<Future<Object>> futures = new ArrayList<>(3);
@@ -123,12 +290,14 @@ public class ClientCommandRunner implements Serializable {
              FastPipedInputStream redirectedStderr = new FastPipedInputStream(stderr)) {
             // running `oc` remotely
             Launcher.ProcStarter ps = launcher.launch().cmds(Arrays.asList(command)).envs(envVars).pwd(filePath).quiet(true).stdout(stdout).stderr(stderr);
+            if (stdin != null)
+                ps.stdin(new ByteArrayInputStream(stdin));
 
             // handling stderr
-            futures.add(completionService.submit(new OcOutputConsumer(redirectedStderr, stderrOutputObserver)));
+            futures.add(completionService.submit(new OcOutputConsumer(redirectedStderr, stderrOutputObserver, stderrChunkObserver)));
 
             // handling stdout
-            futures.add(completionService.submit(new OcOutputConsumer(redirectedStdout, stdoutOutputObserver)));
+            futures.add(completionService.submit(new OcOutputConsumer(redirectedStdout, stdoutOutputObserver, stdoutChunkObserver)));
 
             // start remote `oc` process
             proc = ps.start();
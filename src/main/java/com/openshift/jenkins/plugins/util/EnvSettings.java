@@ -0,0 +1,53 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * {@link EnvSettings} reads the OPENSHIFT_CLIENT_PLUGIN_* environment variables used to tune the plugin
+ * on the Jenkins controller. Malformed values are logged and replaced with the supplied default.
+ */
+public final class EnvSettings {
+    private static final Logger LOGGER = Logger.getLogger(EnvSettings.class.getName());
+
+    private EnvSettings() {
+    }
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        try {
+            if (value != null)
+                return Integer.parseInt(value);
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "invalid value for " + name, t);
+        }
+        return defaultValue;
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        try {
+            if (value != null)
+                return Long.parseLong(value);
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "invalid value for " + name, t);
+        }
+        return defaultValue;
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,113 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * {@link OcCapabilities} records what a particular `oc` binary supports: its client version and the flags
+ * it accepts for the verbs the plugin cares about. Instances are probed once per binary and kept by
+ * {@link OcCapabilityRegistry}.
+ */
+public class OcCapabilities implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Pattern FLAG = Pattern.compile("(?:^|[\\s,])(--[a-z0-9][a-z0-9-]*)");
+
+    /**
+     * Verbs whose flags are probed.
+     */
+    public static final String[] PROBED_VERBS = { "get", "apply", "delete" };
+
+    private final String binary;
+    private String clientVersion;
+    private final HashMap<String, TreeSet<String>> flags = new HashMap<String, TreeSet<String>>();
+    private final long probedAt;
+
+    public OcCapabilities(String binary) {
+        this.binary = binary;
+        this.probedAt = System.currentTimeMillis();
+    }
+
+    /***
+     * @return the path of the `oc` binary on the agent the capabilities were probed on
+     */
+    public String getBinary() {
+        return binary;
+    }
+
+    /***
+     * @return the version reported by `oc version --client`, or null if it could not be determined
+     */
+    public String getClientVersion() {
+        return clientVersion;
+    }
+
+    public long getProbedAt() {
+        return probedAt;
+    }
+
+    public boolean hasIgnoreNotFound() {
+        return supportsFlag("get", "--ignore-not-found");
+    }
+
+    /***
+     * @param verb a verb listed in {@link #PROBED_VERBS}
+     * @param flag the long form of the flag, e.g. --ignore-not-found
+     * @return true if `oc help verb` documents the flag
+     */
+    public boolean supportsFlag(String verb, String flag) {
+        Set<String> f = flags.get(verb);
+        return f != null && f.contains(flag);
+    }
+
+    public Set<String> getFlags(String verb) {
+        Set<String> f = flags.get(verb);
+        return f == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(f);
+    }
+
+    /***
+     * Records the flags documented in the output of `oc help verb`.
+     */
+    public void parseHelp(String verb, String help) {
+        TreeSet<String> f = new TreeSet<String>();
+        for (String line : help.split("\n")) {
+            if (!line.trim().startsWith("-")) {
+                continue;
+            }
+            Matcher m = FLAG.matcher(line);
+            while (m.find()) {
+                f.add(m.group(1));
+            }
+        }
+        flags.put(verb, f);
+    }
+
+    /***
+     * Records the client version from the output of `oc version --client`, e.g. "Client Version: 4.14.0"
+     * or, for older clients, "oc v3.11.0+0cbc58b".
+     */
+    public void parseVersion(String version) {
+        for (String line : version.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("Client Version:")) {
+                clientVersion = line.substring("Client Version:".length()).trim();
+                return;
+            }
+            if (line.startsWith("oc v")) {
+                clientVersion = line.substring("oc ".length()).trim();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OcCapabilities{binary=" + binary + ", clientVersion=" + clientVersion + ", flags=" + flags + "}";
+    }
+}
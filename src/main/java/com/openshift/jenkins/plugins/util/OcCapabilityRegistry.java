@@ -0,0 +1,101 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * {@link OcCapabilityRegistry} keeps the {@link OcCapabilities} of every `oc` binary the plugin has probed,
+ * keyed by agent, binary path, size and modification time, so that a binary is probed once rather than at
+ * the start of every build. The registry is stored on the controller in
+ * <code>$JENKINS_HOME/com.openshift.jenkins.plugins.util.OcCapabilityRegistry.xml</code>.
+ * <p>
+ * Replacing or upgrading `oc` on an agent changes its size or modification time and therefore its key, which
+ * triggers a new probe. The registry can be emptied from the script console with
+ * <code>com.openshift.jenkins.plugins.util.OcCapabilityRegistry.clear()</code>
+ */
+public final class OcCapabilityRegistry {
+    private static final Logger LOGGER = Logger.getLogger(OcCapabilityRegistry.class.getName());
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static OcCapabilityRegistry instance;
+
+    private final LinkedHashMap<String, OcCapabilities> entries = new LinkedHashMap<String, OcCapabilities>();
+
+    private OcCapabilityRegistry() {
+    }
+
+    /***
+     * @return the key of a binary in the registry
+     */
+    public static String key(String node, String binary, long size, long lastModified) {
+        return (node == null || node.isEmpty() ? "(built-in)" : node) + "|" + binary + "|" + size + "|" + lastModified;
+    }
+
+    public static synchronized OcCapabilities get(String key) {
+        return load().entries.get(key);
+    }
+
+    public static synchronized void put(String key, OcCapabilities capabilities) {
+        OcCapabilityRegistry registry = load();
+        registry.entries.remove(key);
+        registry.entries.put(key, capabilities);
+        // forget the binaries probed longest ago, most of which have been replaced since
+        Iterator<String> i = registry.entries.keySet().iterator();
+        while (registry.entries.size() > MAX_ENTRIES && i.hasNext()) {
+            i.next();
+            i.remove();
+        }
+        registry.save();
+    }
+
+    public static synchronized void clear() {
+        load().entries.clear();
+        instance.save();
+    }
+
+    private static OcCapabilityRegistry load() {
+        if (instance != null) {
+            return instance;
+        }
+        XmlFile file = getConfigFile();
+        if (file != null && file.exists()) {
+            try {
+                instance = (OcCapabilityRegistry) file.read();
+            } catch (IOException | ClassCastException e) {
+                LOGGER.log(Level.WARNING, "unable to read the oc capability registry, starting afresh", e);
+            }
+        }
+        if (instance == null) {
+            instance = new OcCapabilityRegistry();
+        }
+        return instance;
+    }
+
+    private void save() {
+        XmlFile file = getConfigFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "unable to save the oc capability registry", e);
+        }
+    }
+
+    private static XmlFile getConfigFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(new File(jenkins.getRootDir(), OcCapabilityRegistry.class.getName() + ".xml"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * {@link OcLocator} remembers, per agent, the OS type of the agent and the `oc` executables found on a given PATH,
+ * so that each `oc` invocation does not have to ask the agent again. Both are determined by a single remote call,
+ * {@link Locate}, and forgotten whenever the agent goes offline or (re)connects. Only PATHs on which `oc` was found
+ * are remembered.
+ */
+public final class OcLocator {
+
+    // agent name -> PATH -> location
+    private static final Map<String, Map<String, Location>> CACHE = new ConcurrentHashMap<String, Map<String, Location>>();
+
+    private OcLocator() {
+    }
+
+    /***
+     * The OS type of an agent along with the `oc` executables on a PATH, in PATH order.
+     */
+    public static final class Location implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ClientCommandBuilder.OsType osType;
+        private final List<String> ocs;
+
+        Location(ClientCommandBuilder.OsType osType, List<String> ocs) {
+            this.osType = osType;
+            this.ocs = Collections.unmodifiableList(new ArrayList<String>(ocs));
+        }
+
+        public ClientCommandBuilder.OsType getOsType() {
+            return osType;
+        }
+
+        public List<String> getOcs() {
+            return ocs;
+        }
+    }
+
+    /***
+     * Combines {@link ClientCommandBuilder.GetOsType} and {@link FindOC} into one round trip.
+     */
+    public static final class Locate extends MasterToSlaveCallable<Location, Throwable> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        public Locate(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public Location call() throws Throwable {
+            return new Location(ClientCommandBuilder.getOsFromPlatform(), new FindOC(path).call());
+        }
+    }
+
+    /***
+     * @param filePath a path on the agent to locate `oc` on
+     * @param path the PATH to search
+     * @return the location of `oc` for that PATH, from the cache when `oc` has been found there before
+     * @throws Throwable if the agent could not be asked
+     */
+    public static Location locate(FilePath filePath, String path) throws Throwable {
+        Computer computer = filePath.toComputer();
+        if (computer == null || path == null) {
+            // not attached to a known agent, nothing to key the cache on
+            return filePath.act(new Locate(path));
+        }
+        Map<String, Location> byPath = CACHE.computeIfAbsent(computer.getName(), k -> new ConcurrentHashMap<String, Location>());
+        Location location = byPath.get(path);
+        if (location == null) {
+            location = filePath.act(new Locate(path));
+            // a miss is not remembered, so that an `oc` installed on the PATH later is found without a reconnect
+            if (!location.getOcs().isEmpty()) {
+                byPath.put(path, location);
+            }
+        }
+        return location;
+    }
+
+    public static void forget(Computer computer) {
+        if (computer != null) {
+            CACHE.remove(computer.getName());
+        }
+    }
+
+    @Extension
+    public static class ForgetOnReconnect extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) throws IOException, InterruptedException {
+            forget(c);
+        }
+
+        @Override
+        public void onOffline(Computer c, OfflineCause cause) {
+            forget(c);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/***
+ * {@link OutputCapture} collects the output of an `oc` invocation. Output is kept in memory up to a per-call threshold
+ * and spilled to a temporary file once it grows beyond it. All captures on the controller also share a memory budget;
+ * a capture which cannot reserve more memory from the budget spills early, so concurrent steps cannot exhaust the heap.
+ * <p>
+ * Output held in memory still ends up in the pipeline's program state, which is saved at every step boundary. Output
+ * longer than the inline limit is therefore written to the spill directory as well when the capture is closed, and the
+ * resulting {@link CapturedOutput} keeps only its first {@link #PREVIEW_SIZE} bytes inline. Spill files are gzip
+ * compressed.
+ * <p>
+ * Tuned with the following environment variables on the controller:
+ * <ul>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_OUTPUT_MEMORY_THRESHOLD - bytes a single capture may hold in memory (default 4 MiB)</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_OUTPUT_MEMORY_BUDGET - bytes all captures together may hold in memory (default 256 MiB)</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_OUTPUT_INLINE_LIMIT - bytes of output a result may hold inline (default 16 KiB)</li>
+ * </ul>
+ */
+public class OutputCapture extends OutputStream {
+    private static final Logger LOGGER = Logger.getLogger(OutputCapture.class.getName());
+
+    private static final long THRESHOLD = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_OUTPUT_MEMORY_THRESHOLD", 4L << 20);
+    private static final long BUDGET = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_OUTPUT_MEMORY_BUDGET", 256L << 20);
+    private static final long INLINE_LIMIT = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_OUTPUT_INLINE_LIMIT", 16L << 10);
+    private static final AtomicLong budgetInUse = new AtomicLong();
+
+    static final int PREVIEW_SIZE = 1024;
+
+    private final File spillDirectory;
+    private final String name;
+
+    private byte[] buffer = new byte[0];
+    private int count;
+    private long reserved;
+    private long length;
+    private File spillFile;
+    private OutputStream spillStream;
+    private final byte[] preview = new byte[PREVIEW_SIZE];
+    private int previewCount;
+    private CapturedOutput result;
+    private ClientCommandOutputCleaner.Redactor redactor;
+
+    /***
+     * @param spillDirectory directory receiving the spill file, typically inside the build directory;
+     *                       null for the system temporary directory
+     * @param name prefix of the spill file name, e.g. "stdout"
+     */
+    public OutputCapture(File spillDirectory, String name) {
+        this.spillDirectory = spillDirectory;
+        this.name = name;
+    }
+
+    /***
+     * Locates secret data in the output while it is written, so {@link CapturedOutput#asRedactedString()} does not
+     * have to search it again. Must be called before anything is written.
+     * @return this capture
+     */
+    public synchronized OutputCapture redactingSecrets() {
+        if (redactor == null && length == 0) {
+            redactor = new ClientCommandOutputCleaner.Redactor();
+        }
+        return this;
+    }
+
+    /***
+     * @return the number of bytes of output held in memory by all captures on this controller
+     */
+    public static long getBudgetInUse() {
+        return budgetInUse.get();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (result != null) {
+            throw new IOException("output capture " + name + " is already closed");
+        }
+        length += len;
+        if (previewCount < PREVIEW_SIZE) {
+            int n = Math.min(len, PREVIEW_SIZE - previewCount);
+            System.arraycopy(b, off, preview, previewCount, n);
+            previewCount += n;
+        }
+        if (redactor != null) {
+            redactor.update(b, off, len);
+        }
+        if (spillStream == null) {
+            int needed = count + len;
+            if (needed <= THRESHOLD && ensureCapacity(needed)) {
+                System.arraycopy(b, off, buffer, count, len);
+                count = needed;
+                return;
+            }
+            spill();
+        }
+        spillStream.write(b, off, len);
+    }
+
+    private boolean ensureCapacity(int needed) {
+        if (needed <= buffer.length) {
+            return true;
+        }
+        int capacity = (int) Math.min(THRESHOLD, Math.max(needed, Math.max(1024, buffer.length * 2L)));
+        if (!reserve(capacity - buffer.length)) {
+            return false;
+        }
+        buffer = Arrays.copyOf(buffer, capacity);
+        return true;
+    }
+
+    private boolean reserve(long bytes) {
+        for (;;) {
+            long current = budgetInUse.get();
+            if (BUDGET >= 0 && current + bytes > BUDGET) {
+                return false;
+            }
+            if (budgetInUse.compareAndSet(current, current + bytes)) {
+                reserved += bytes;
+                return true;
+            }
+        }
+    }
+
+    private void releaseBudget() {
+        budgetInUse.addAndGet(-reserved);
+        reserved = 0;
+    }
+
+    private void spill() throws IOException {
+        File dir = spillDirectory;
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            LOGGER.log(Level.WARNING, "unable to create " + dir + ", spilling oc output to the temporary directory");
+            dir = null;
+        }
+        spillFile = File.createTempFile(name, ".out.gz", dir);
+        spillStream = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)), 8192);
+        spillStream.write(buffer, 0, count);
+        buffer = null;
+        count = 0;
+        releaseBudget();
+        LOGGER.log(Level.FINE, "oc output " + name + " spilled to " + spillFile);
+    }
+
+    /***
+     * Finishes the capture and releases its share of the memory budget.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (result != null) {
+            return;
+        }
+        try {
+            if (spillStream == null && spillDirectory != null && count > INLINE_LIMIT) {
+                spill();
+            }
+            if (spillStream != null) {
+                spillStream.close();
+                result = CapturedOutput.ofFile(spillFile, length, previewString());
+            } else {
+                result = CapturedOutput.ofString(new String(buffer, 0, count, StandardCharsets.UTF_8));
+            }
+            if (redactor != null) {
+                result = result.withRedactions(redactor.finish());
+            }
+        } finally {
+            buffer = null;
+            releaseBudget();
+        }
+    }
+
+    private String previewString() {
+        int n = previewCount;
+        if (length > n) {
+            // do not cut a multi-byte character in half
+            int lead = n;
+            while (lead > 0 && n - lead < 3 && (preview[lead - 1] & 0xc0) == 0x80) {
+                lead--;
+            }
+            if (lead > 0 && (preview[lead - 1] & 0xc0) == 0xc0) {
+                int b = preview[lead - 1] & 0xff;
+                int size = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : 2;
+                if (n - (lead - 1) < size) {
+                    n = lead - 1;
+                }
+            }
+        }
+        return new String(preview, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /***
+     * @return the captured output; closes the capture if it is still open
+     * @throws IOException when the spill file cannot be completed
+     */
+    public synchronized CapturedOutput toCapturedOutput() throws IOException {
+        close();
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ * {@link ResourceKind} describes the API resources {@link RestClientEngine} knows how to address without asking the
+ * API server for discovery information. Kinds which are not listed here are left to `oc`.
+ */
+public final class ResourceKind {
+
+    private static final Map<String, ResourceKind> KINDS;
+
+    static {
+        Map<String, ResourceKind> m = new HashMap<>();
+        register(m, new ResourceKind("", "v1", "pods", "Pod", true), "po");
+        register(m, new ResourceKind("", "v1", "services", "Service", true), "svc");
+        register(m, new ResourceKind("", "v1", "configmaps", "ConfigMap", true), "cm");
+        register(m, new ResourceKind("", "v1", "secrets", "Secret", true));
+        register(m, new ResourceKind("", "v1", "serviceaccounts", "ServiceAccount", true), "sa");
+        register(m, new ResourceKind("", "v1", "persistentvolumeclaims", "PersistentVolumeClaim", true), "pvc");
+        register(m, new ResourceKind("", "v1", "replicationcontrollers", "ReplicationController", true), "rc");
+        register(m, new ResourceKind("", "v1", "endpoints", "Endpoints", true), "ep");
+        register(m, new ResourceKind("", "v1", "namespaces", "Namespace", false), "ns");
+        register(m, new ResourceKind("apps", "v1", "deployments", "Deployment", true), "deploy");
+        register(m, new ResourceKind("apps", "v1", "replicasets", "ReplicaSet", true), "rs");
+        register(m, new ResourceKind("apps", "v1", "statefulsets", "StatefulSet", true), "sts");
+        register(m, new ResourceKind("apps", "v1", "daemonsets", "DaemonSet", true), "ds");
+        register(m, new ResourceKind("batch", "v1", "jobs", "Job", true));
+        register(m, new ResourceKind("batch", "v1", "cronjobs", "CronJob", true), "cj");
+        register(m, new ResourceKind("networking.k8s.io", "v1", "ingresses", "Ingress", true), "ing");
+        register(m, new ResourceKind("apps.openshift.io", "v1", "deploymentconfigs", "DeploymentConfig", true), "dc");
+        register(m, new ResourceKind("build.openshift.io", "v1", "buildconfigs", "BuildConfig", true), "bc");
+        register(m, new ResourceKind("build.openshift.io", "v1", "builds", "Build", true));
+        register(m, new ResourceKind("image.openshift.io", "v1", "imagestreams", "ImageStream", true), "is");
+        register(m, new ResourceKind("image.openshift.io", "v1", "imagestreamtags", "ImageStreamTag", true), "istag");
+        register(m, new ResourceKind("route.openshift.io", "v1", "routes", "Route", true));
+        register(m, new ResourceKind("template.openshift.io", "v1", "templates", "Template", true));
+        register(m, new ResourceKind("project.openshift.io", "v1", "projects", "Project", false));
+        KINDS = Collections.unmodifiableMap(m);
+    }
+
+    private static void register(Map<String, ResourceKind> m, ResourceKind kind, String... shortNames) {
+        String singular = kind.kind.toLowerCase(Locale.ENGLISH);
+        m.put(singular, kind);
+        m.put(kind.resource, kind);
+        for (String s : shortNames) {
+            m.put(s, kind);
+        }
+        if (!kind.group.isEmpty()) {
+            m.put(singular + "." + kind.group, kind);
+            m.put(kind.resource + "." + kind.group, kind);
+        }
+    }
+
+    public final String group;
+    public final String version;
+    public final String resource;
+    public final String kind;
+    public final boolean namespaced;
+
+    private ResourceKind(String group, String version, String resource, String kind, boolean namespaced) {
+        this.group = group;
+        this.version = version;
+        this.resource = resource;
+        this.kind = kind;
+        this.namespaced = namespaced;
+    }
+
+    /***
+     * Resolves a resource type the way it may be written on the `oc` command line, e.g. "dc", "deploymentconfig",
+     * "DeploymentConfig", "deploymentconfigs" or "deploymentconfig.apps.openshift.io".
+     * @param type the resource type
+     * @return the kind, or null if it is not known
+     */
+    public static ResourceKind lookup(String type) {
+        if (type == null) {
+            return null;
+        }
+        ResourceKind k = KINDS.get(type.toLowerCase(Locale.ENGLISH));
+        if (k == null && type.indexOf('.') > 0) {
+            // partially qualified names like deploymentconfig.apps
+            String lower = type.toLowerCase(Locale.ENGLISH);
+            String base = lower.substring(0, lower.indexOf('.'));
+            String group = lower.substring(lower.indexOf('.') + 1);
+            k = KINDS.get(base);
+            if (k != null && !k.group.startsWith(group + ".")) {
+                k = null;
+            }
+        }
+        return k;
+    }
+
+    public String getApiVersion() {
+        return group.isEmpty() ? version : group + "/" + version;
+    }
+
+    /***
+     * @return the type as `oc` prints it, e.g. "deployment.apps" or "pod"
+     */
+    public String getTypeName() {
+        String singular = kind.toLowerCase(Locale.ENGLISH);
+        return group.isEmpty() ? singular : singular + "." + group;
+    }
+
+    /***
+     * @param name the object name
+     * @return the name as printed by `oc get -o=name`, e.g. "deployment.apps/frontend"
+     */
+    public String qualify(String name) {
+        return getTypeName() + "/" + name;
+    }
+
+    /***
+     * @param namespace the namespace of the collection; ignored for cluster scoped kinds
+     * @return the API path of the collection, e.g. "/apis/apps/v1/namespaces/myproject/deployments"
+     */
+    public String getCollectionPath(String namespace) {
+        StringBuilder sb = new StringBuilder(group.isEmpty() ? "/api/" : "/apis/" + group + "/");
+        sb.append(version);
+        if (namespaced) {
+            sb.append("/namespaces/").append(namespace);
+        }
+        return sb.append('/').append(resource).toString();
+    }
+
+    @Override
+    public String toString() {
+        return getTypeName();
+    }
+}
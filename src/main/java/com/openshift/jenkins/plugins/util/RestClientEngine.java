@@ -0,0 +1,846 @@
+package com.openshift.jenkins.plugins.util;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import hudson.util.QuotedStringTokenizer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * {@link RestClientEngine} serves the most common `oc` invocations made by the DSL (get -o=name, get -o=json, delete,
+ * patch, label and annotate) by talking to the API server directly, over a keep-alive HTTP client shared by all steps
+ * targeting the same cluster. This avoids forking `oc`, along with its TLS handshake and API discovery, for every call.
+ * <p>
+ * The engine is opt-in, either for the whole controller with the OPENSHIFT_CLIENT_PLUGIN_ENGINE=native environment
+ * variable or from a pipeline with <code>openshift.engine('native')</code>. Invocations it does not understand, e.g.
+ * unknown kinds, flags or output formats, are left to `oc`; see {@link #forCommand(ClientCommandBuilder, String)}.
+ * Output and exit status mimic those of `oc` so the DSL cannot tell the difference.
+ * <p>
+ * Unlike `oc`, which runs on the agent, the engine talks to the API server from the controller. A server the controller
+ * cannot connect to is remembered for OPENSHIFT_CLIENT_PLUGIN_ENGINE_RETRY_MILLIS (default 5 minutes), during which
+ * invocations against it go to `oc` straight away instead of waiting for the connect timeout again.
+ */
+public class RestClientEngine {
+    private static final Logger LOGGER = Logger.getLogger(RestClientEngine.class.getName());
+
+    public static final String OC = "oc";
+    public static final String NATIVE = "native";
+
+    private static final String DEFAULT_ENGINE = EnvSettings.getString("OPENSHIFT_CLIENT_PLUGIN_ENGINE", OC);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final long DELETE_POLL_MILLIS = 500;
+    // how long delete waits for the objects to go away when --timeout is not given, or is 0
+    static final long DEFAULT_DELETE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    private static final long UNREACHABLE_RETRY_MILLIS = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_ENGINE_RETRY_MILLIS", 5 * 60 * 1000L);
+    private static final Pattern DURATION_PART = Pattern.compile("([0-9]+(?:\\.[0-9]*)?)(h|ms|m|s|us|\u00b5s|ns)");
+    private static final Pattern OBJECT_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._:@-]*");
+
+    private static final ConcurrentHashMap<String, HttpClient> clients = new ConcurrentHashMap<>();
+    // base URL of servers the controller could not connect to, and until when they are left to oc
+    private static final ConcurrentHashMap<String, Long> unreachable = new ConcurrentHashMap<>();
+
+    /***
+     * Thrown when an invocation turns out not to be servable natively before anything was changed on the cluster,
+     * e.g. because the API server cannot be reached or does not serve the resource type. The caller runs `oc` instead.
+     */
+    public static class FallbackException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public FallbackException(String message) {
+            super(message);
+        }
+
+        public FallbackException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final class Target {
+        final ResourceKind kind;
+        final String name;
+
+        Target(ResourceKind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private final String server;
+    private final String token;
+    private final String verb;
+    private final String namespace;
+    private final List<Target> targets;
+    private final ResourceKind listKind;
+    private final String labelSelector;
+    private final String fieldSelector;
+    private final String output;
+    private final boolean ignoreNotFound;
+    private final boolean wait;
+    private final long timeoutMillis;
+    private final boolean overwrite;
+    private final String patch;
+    private final String patchType;
+    private final Map<String, String> pairs;
+
+    private HttpClient client;
+    private boolean mutated;
+    private int status;
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder err = new StringBuilder();
+
+    private RestClientEngine(String server, String token, String verb, String namespace, List<Target> targets,
+                             ResourceKind listKind, String labelSelector, String fieldSelector, String output,
+                             boolean ignoreNotFound, boolean wait, long timeoutMillis, boolean overwrite, String patch,
+                             String patchType, Map<String, String> pairs) {
+        this.server = server;
+        this.token = token;
+        this.verb = verb;
+        this.namespace = namespace;
+        this.targets = targets;
+        this.listKind = listKind;
+        this.labelSelector = labelSelector;
+        this.fieldSelector = fieldSelector;
+        this.output = output;
+        this.ignoreNotFound = ignoreNotFound;
+        this.wait = wait;
+        this.timeoutMillis = timeoutMillis;
+        this.overwrite = overwrite;
+        this.patch = patch;
+        this.patchType = patchType;
+        this.pairs = pairs;
+    }
+
+    /***
+     * @param requested the engine requested by the pipeline, null to use the controller default
+     * @return true if the native engine should be tried
+     */
+    public static boolean isSelected(String requested) {
+        String engine = requested == null || requested.trim().isEmpty() ? DEFAULT_ENGINE : requested.trim();
+        return NATIVE.equalsIgnoreCase(engine);
+    }
+
+    /***
+     * Decides whether an invocation can be served natively.
+     * @param cmd the invocation
+     * @param requested the engine requested by the pipeline, null to use the controller default
+     * @return an engine ready to run the invocation, or null if `oc` must be used
+     */
+    public static RestClientEngine forCommand(ClientCommandBuilder cmd, String requested) {
+        if (!isSelected(requested) || cmd.streamStdOutToConsolePrefix) {
+            return null;
+        }
+        // the connection must be fully described by the context; anything else (kubeconfig defaults, insecure
+        // connections, extra global arguments) is left to oc
+        if (cmd.server == null || cmd.token == null || cmd.skipTLSVerify
+                || (cmd.advArgs != null && !cmd.advArgs.isEmpty())) {
+            return null;
+        }
+        String[] tokens = QuotedStringTokenizer.tokenize(String.join(" ", cmd.buildVerbArguments()));
+        RestClientEngine engine = parse(cmd, tokens);
+        if (engine == null) {
+            LOGGER.log(Level.FINE, "leaving `" + cmd.asString(true) + "` to oc");
+        }
+        return engine;
+    }
+
+    private static RestClientEngine parse(ClientCommandBuilder cmd, String[] tokens) {
+        if (tokens.length == 0) {
+            return null;
+        }
+        String verb = tokens[0];
+        boolean labeling = verb.equals("label") || verb.equals("annotate");
+        if (!verb.equals("get") && !verb.equals("delete") && !verb.equals("patch") && !labeling) {
+            return null;
+        }
+
+        String namespace = cmd.project;
+        List<Target> targets = new ArrayList<>();
+        ResourceKind kind = null;
+        String labelSelector = null;
+        String fieldSelector = null;
+        String output = null;
+        boolean all = false;
+        boolean ignoreNotFound = false;
+        boolean wait = true;
+        long timeoutMillis = 0;
+        boolean overwrite = false;
+        String patch = null;
+        String patchType = "strategic";
+        Map<String, String> pairs = new LinkedHashMap<>();
+
+        for (int i = 1; i < tokens.length; i++) {
+            String t = tokens[i];
+            if (t.startsWith("-") && t.length() > 1) {
+                String flag;
+                String value = null;
+                int eq = t.indexOf('=');
+                if (t.startsWith("--")) {
+                    flag = eq > 0 ? t.substring(0, eq) : t;
+                    value = eq > 0 ? t.substring(eq + 1) : null;
+                } else {
+                    flag = t.substring(0, 2);
+                    value = t.length() > 2 ? t.substring(t.charAt(2) == '=' ? 3 : 2) : null;
+                }
+                switch (flag) {
+                    case "--all":
+                    case "--ignore-not-found":
+                    case "--overwrite":
+                    case "--wait":
+                        Boolean b = value == null ? Boolean.TRUE : parseBoolean(value);
+                        if (b == null) {
+                            return null;
+                        }
+                        if (flag.equals("--all")) {
+                            all = b;
+                        } else if (flag.equals("--ignore-not-found")) {
+                            ignoreNotFound = b;
+                        } else if (flag.equals("--overwrite")) {
+                            overwrite = b;
+                        } else {
+                            wait = b;
+                        }
+                        continue;
+                    case "-o":
+                    case "--output":
+                    case "-l":
+                    case "--selector":
+                    case "--field-selector":
+                    case "-n":
+                    case "--namespace":
+                    case "-p":
+                    case "--patch":
+                    case "--type":
+                    case "--timeout":
+                        if (value == null) {
+                            if (i + 1 >= tokens.length) {
+                                return null;
+                            }
+                            value = tokens[++i];
+                        }
+                        break;
+                    default:
+                        return null;
+                }
+                switch (flag) {
+                    case "-o":
+                    case "--output":
+                        output = value;
+                        break;
+                    case "-l":
+                    case "--selector":
+                        labelSelector = value;
+                        break;
+                    case "--field-selector":
+                        fieldSelector = value;
+                        break;
+                    case "-n":
+                    case "--namespace":
+                        namespace = value;
+                        break;
+                    case "-p":
+                    case "--patch":
+                        patch = value;
+                        break;
+                    case "--timeout":
+                        timeoutMillis = parseDuration(value);
+                        if (timeoutMillis < 0 || !verb.equals("delete")) {
+                            return null;
+                        }
+                        break;
+                    default:
+                        patchType = value;
+                        break;
+                }
+            } else if (labeling && (t.contains("=") || t.endsWith("-"))) {
+                int eq = t.indexOf('=');
+                String key = eq >= 0 ? t.substring(0, eq) : t.substring(0, t.length() - 1);
+                if (key.isEmpty()) {
+                    return null;
+                }
+                pairs.put(key, eq >= 0 ? t.substring(eq + 1) : null);
+            } else if (t.contains("/")) {
+                int slash = t.indexOf('/');
+                ResourceKind k = ResourceKind.lookup(t.substring(0, slash));
+                String name = t.substring(slash + 1);
+                if (k == null || kind != null || !OBJECT_NAME.matcher(name).matches()) {
+                    return null;
+                }
+                targets.add(new Target(k, name));
+            } else if (kind == null && targets.isEmpty()) {
+                kind = ResourceKind.lookup(t);
+                if (kind == null) {
+                    return null;
+                }
+            } else if (kind != null && OBJECT_NAME.matcher(t).matches()) {
+                targets.add(new Target(kind, t));
+            } else {
+                return null;
+            }
+        }
+
+        boolean selecting = labelSelector != null || fieldSelector != null;
+        ResourceKind listKind = targets.isEmpty() ? kind : null;
+        if (listKind == null && (targets.isEmpty() || selecting || all)) {
+            return null;
+        }
+        switch (verb) {
+            case "get":
+                if (!"name".equals(output) && !"json".equals(output)) {
+                    return null;
+                }
+                break;
+            case "delete":
+                if (listKind != null && !all && !selecting) {
+                    return null;
+                }
+                break;
+            case "patch":
+                if (listKind != null || patch == null || contentType(patchType) == null) {
+                    return null;
+                }
+                break;
+            default:
+                if (pairs.isEmpty() || fieldSelector != null || (listKind != null && !all && labelSelector == null)) {
+                    return null;
+                }
+                break;
+        }
+        if (!verb.equals("get") && output != null && !output.equals("name")) {
+            return null;
+        }
+        if (namespace == null || namespace.trim().isEmpty() || !OBJECT_NAME.matcher(namespace).matches()) {
+            // oc would fall back on the namespace of its kubeconfig, which only oc knows
+            for (Target target : targets) {
+                if (target.kind.namespaced) {
+                    return null;
+                }
+            }
+            if (listKind != null && listKind.namespaced) {
+                return null;
+            }
+        }
+        return new RestClientEngine(cmd.server, cmd.token, verb, namespace, targets, listKind, labelSelector,
+                fieldSelector, output, ignoreNotFound, wait, timeoutMillis, overwrite, patch, patchType, pairs);
+    }
+
+    /***
+     * @param value a duration as `oc` takes it, e.g. "30s", "1m30s" or "0"
+     * @return the duration in milliseconds, or -1 if value is not a duration
+     */
+    static long parseDuration(String value) {
+        if (value.equals("0")) {
+            return 0;
+        }
+        Matcher m = DURATION_PART.matcher(value);
+        double millis = 0;
+        int end = 0;
+        while (m.lookingAt()) {
+            double n = Double.parseDouble(m.group(1));
+            switch (m.group(2)) {
+                case "h":
+                    millis += n * 3600000;
+                    break;
+                case "m":
+                    millis += n * 60000;
+                    break;
+                case "s":
+                    millis += n * 1000;
+                    break;
+                case "ms":
+                    millis += n;
+                    break;
+                case "ns":
+                    millis += n / 1000000;
+                    break;
+                default: // microseconds
+                    millis += n / 1000;
+                    break;
+            }
+            end = m.end();
+            m.region(end, value.length());
+        }
+        return end == 0 || end != value.length() ? -1 : (long) Math.ceil(millis);
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static String contentType(String patchType) {
+        switch (patchType) {
+            case "strategic":
+                return "application/strategic-merge-patch+json";
+            case "merge":
+                return "application/merge-patch+json";
+            case "json":
+                return "application/json-patch+json";
+            default:
+                return null;
+        }
+    }
+
+    /***
+     * Runs the invocation. Output is only written once the invocation has completed, so nothing is written when
+     * a {@link FallbackException} is thrown.
+     * @param certificateAuthority PEM encoded certificate authority of the API server, null to use the JVM default
+     * @param stdout receives the output `oc` would have printed on stdout
+     * @param stderr receives the output `oc` would have printed on stderr
+     * @return the exit status `oc` would have returned
+     * @throws FallbackException when `oc` must be run instead
+     * @throws IOException when the output cannot be written
+     * @throws InterruptedException when interrupted while talking to the API server
+     */
+    public int execute(String certificateAuthority, OutputStream stdout, OutputStream stderr)
+            throws FallbackException, IOException, InterruptedException {
+        String url = baseUrl(server);
+        Long retry = unreachable.get(url);
+        if (retry != null) {
+            if (System.currentTimeMillis() < retry) {
+                throw new FallbackException(server + " could not be reached from the controller recently");
+            }
+            unreachable.remove(url, retry);
+        }
+        try {
+            client = getClient(server, certificateAuthority);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new FallbackException("unable to set up a connection to " + server + ": " + e.getMessage(), e);
+        }
+        try {
+            switch (verb) {
+                case "get":
+                    get();
+                    break;
+                case "delete":
+                    delete();
+                    break;
+                case "patch":
+                    patch();
+                    break;
+                default:
+                    label(verb.equals("label") ? "labels" : "annotations", verb.equals("label") ? "labeled" : "annotated");
+                    break;
+            }
+        } catch (IOException e) {
+            if (!mutated) {
+                if (e instanceof ConnectException || e instanceof HttpConnectTimeoutException) {
+                    unreachable.put(url, System.currentTimeMillis() + UNREACHABLE_RETRY_MILLIS);
+                }
+                throw new FallbackException("unable to reach " + server + ": " + e.getMessage(), e);
+            }
+            err.append("error: ").append(e.getMessage()).append('\n');
+            status = 1;
+        }
+        stdout.write(out.toString().getBytes(StandardCharsets.UTF_8));
+        stderr.write(err.toString().getBytes(StandardCharsets.UTF_8));
+        return status;
+    }
+
+    private void get() throws IOException, InterruptedException, FallbackException {
+        List<Map<String, Object>> items = new ArrayList<>();
+        if (listKind != null) {
+            for (Map<String, Object> item : list(listKind)) {
+                items.add(withType(listKind, item));
+            }
+        } else {
+            for (Target target : targets) {
+                Response r = send("GET", objectPath(target), null, null, null);
+                if (r.isSuccess()) {
+                    if (targets.size() == 1 && "json".equals(output)) {
+                        // a single object is printed as the server returned it
+                        out.append(r.body).append('\n');
+                        return;
+                    }
+                    items.add(parseObject(r.body));
+                } else {
+                    failUnlessIgnored(target, r);
+                }
+            }
+        }
+        if ("name".equals(output)) {
+            for (Map<String, Object> item : items) {
+                out.append(kindOf(item).qualify(nameOf(item))).append('\n');
+            }
+        } else if (listKind != null || !items.isEmpty()) {
+            Map<String, Object> list = new LinkedHashMap<>();
+            list.put("apiVersion", "v1");
+            list.put("items", items);
+            list.put("kind", "List");
+            list.put("metadata", Collections.singletonMap("resourceVersion", ""));
+            out.append(JsonOutput.prettyPrint(JsonOutput.toJson(list))).append('\n');
+        }
+    }
+
+    private void delete() throws IOException, InterruptedException, FallbackException {
+        List<Target> victims = resolveTargets();
+        if (victims.isEmpty() && listKind != null) {
+            out.append("No resources found\n");
+            return;
+        }
+        List<Target> deleted = new ArrayList<>();
+        String body = "{\"kind\":\"DeleteOptions\",\"apiVersion\":\"v1\",\"propagationPolicy\":\"Background\"}";
+        for (Target target : victims) {
+            Response r = send("DELETE", objectPath(target), null, "application/json", body);
+            if (r.isSuccess()) {
+                mutated = true;
+                deleted.add(target);
+                if ("name".equals(output)) {
+                    out.append(target.kind.qualify(target.name)).append('\n');
+                } else {
+                    out.append(target.kind.getTypeName()).append(" \"").append(target.name).append("\" deleted\n");
+                }
+            } else {
+                failUnlessIgnored(target, r);
+            }
+        }
+        if (wait) {
+            // like oc, only return once the objects are gone, e.g. after their finalizers have run, or fail once the
+            // timeout has passed
+            long deadline = System.currentTimeMillis() + (timeoutMillis > 0 ? timeoutMillis : DEFAULT_DELETE_TIMEOUT_MILLIS);
+            for (Target target : deleted) {
+                while (send("GET", objectPath(target), null, null, null).isSuccess()) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        err.append("error: timed out waiting for the condition on ").append(target.kind.resource)
+                                .append('/').append(target.name).append('\n');
+                        status = 1;
+                        break;
+                    }
+                    Thread.sleep(Math.min(DELETE_POLL_MILLIS, left));
+                }
+            }
+        }
+    }
+
+    private void patch() throws IOException, InterruptedException, FallbackException {
+        for (Target target : targets) {
+            Response before = send("GET", objectPath(target), null, null, null);
+            if (!before.isSuccess()) {
+                fail(target, before);
+                continue;
+            }
+            Response r = send("PATCH", objectPath(target), null, contentType(patchType), patch);
+            if (!r.isSuccess()) {
+                fail(target, r);
+                continue;
+            }
+            mutated = true;
+            // the API server leaves the resourceVersion alone when a patch changes nothing
+            boolean changed = !resourceVersionOf(parseObject(before.body)).equals(resourceVersionOf(parseObject(r.body)));
+            printChange(target, changed ? "patched" : "patched (no change)");
+        }
+    }
+
+    private void label(String field, String operation) throws IOException, InterruptedException, FallbackException {
+        List<Map<String, Object>> objects = new ArrayList<>();
+        List<Target> resolved = new ArrayList<>();
+        if (listKind != null) {
+            for (Map<String, Object> item : list(listKind)) {
+                objects.add(item);
+                resolved.add(new Target(listKind, nameOf(item)));
+            }
+        } else {
+            for (Target target : targets) {
+                Response r = send("GET", objectPath(target), null, null, null);
+                if (!r.isSuccess()) {
+                    fail(target, r);
+                    continue;
+                }
+                objects.add(parseObject(r.body));
+                resolved.add(target);
+            }
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            Target target = resolved.get(i);
+            Map<String, Object> metadata = mapOf(objects.get(i).get("metadata"));
+            Map<String, Object> current = mapOf(metadata.get(field));
+            Map<String, Object> changes = new LinkedHashMap<>();
+            boolean conflict = false;
+            for (Map.Entry<String, String> pair : pairs.entrySet()) {
+                Object existing = current.get(pair.getKey());
+                if (pair.getValue() == null) {
+                    if (current.containsKey(pair.getKey())) {
+                        changes.put(pair.getKey(), null);
+                    }
+                } else if (existing != null && !overwrite && !pair.getValue().equals(existing)) {
+                    // like oc, setting the value a key already has is not a conflict
+                    err.append("error: '").append(pair.getKey()).append("' already has a value (").append(existing)
+                            .append("), and --overwrite is false\n");
+                    status = 1;
+                    conflict = true;
+                    break;
+                } else if (!pair.getValue().equals(existing)) {
+                    changes.put(pair.getKey(), pair.getValue());
+                }
+            }
+            if (conflict) {
+                continue;
+            }
+            if (changes.isEmpty()) {
+                printChange(target, "not " + operation);
+                continue;
+            }
+            String body = JsonOutput.toJson(Collections.singletonMap("metadata", Collections.singletonMap(field, changes)));
+            Response r = send("PATCH", objectPath(target), null, "application/merge-patch+json", body);
+            if (!r.isSuccess()) {
+                fail(target, r);
+                continue;
+            }
+            mutated = true;
+            printChange(target, operation);
+        }
+    }
+
+    private void printChange(Target target, String operation) {
+        out.append(target.kind.qualify(target.name));
+        if (!"name".equals(output)) {
+            out.append(' ').append(operation);
+        }
+        out.append('\n');
+    }
+
+    private List<Target> resolveTargets() throws IOException, InterruptedException, FallbackException {
+        if (listKind == null) {
+            return targets;
+        }
+        List<Target> resolved = new ArrayList<>();
+        for (Map<String, Object> item : list(listKind)) {
+            resolved.add(new Target(listKind, nameOf(item)));
+        }
+        return resolved;
+    }
+
+    private List<Map<String, Object>> list(ResourceKind kind) throws IOException, InterruptedException, FallbackException {
+        StringBuilder query = new StringBuilder();
+        if (labelSelector != null) {
+            query.append("labelSelector=").append(URLEncoder.encode(labelSelector, StandardCharsets.UTF_8));
+        }
+        if (fieldSelector != null) {
+            query.append(query.length() > 0 ? "&" : "").append("fieldSelector=")
+                    .append(URLEncoder.encode(fieldSelector, StandardCharsets.UTF_8));
+        }
+        Response r = send("GET", kind.getCollectionPath(namespace), query.length() > 0 ? query.toString() : null, null, null);
+        if (r.status == 404 && !mutated) {
+            throw new FallbackException(server + " does not serve " + kind.getTypeName());
+        }
+        if (!r.isSuccess()) {
+            err.append(serverError(r)).append('\n');
+            status = 1;
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> items = new ArrayList<>();
+        Object list = parseObject(r.body).get("items");
+        if (list instanceof List) {
+            for (Object item : (List<?>) list) {
+                items.add(mapOf(item));
+            }
+        }
+        return items;
+    }
+
+    private void failUnlessIgnored(Target target, Response r) throws FallbackException {
+        if (ignoreNotFound && isNotFound(target, r)) {
+            return;
+        }
+        fail(target, r);
+    }
+
+    private void fail(Target target, Response r) throws FallbackException {
+        if (r.status == 404 && !isNotFound(target, r) && !mutated) {
+            // a 404 which is not about the object itself means the resource type is not served by this cluster
+            throw new FallbackException(server + " does not serve " + target.kind.getTypeName());
+        }
+        err.append(serverError(r)).append('\n');
+        status = 1;
+    }
+
+    private static boolean isNotFound(Target target, Response r) {
+        if (r.status != 404) {
+            return false;
+        }
+        Map<String, Object> details = mapOf(parseObjectQuietly(r.body).get("details"));
+        return target.name.equals(details.get("name"));
+    }
+
+    private static String serverError(Response r) {
+        if (r.status == 401) {
+            return "error: You must be logged in to the server (Unauthorized)";
+        }
+        Map<String, Object> s = parseObjectQuietly(r.body);
+        Object reason = s.get("reason");
+        Object message = s.get("message");
+        if (message == null) {
+            return "error: the server responded with the status code " + r.status + (r.body.isEmpty() ? "" : ": " + r.body.trim());
+        }
+        return "Error from server" + (reason == null ? "" : " (" + reason + ")") + ": " + message;
+    }
+
+    private String objectPath(Target target) {
+        return target.kind.getCollectionPath(namespace) + "/" + target.name;
+    }
+
+    private Response send(String method, String path, String query, String contentType, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(baseUrl(server) + path + (query == null ? "" : "?" + query)))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .header("User-Agent", "openshift-jenkins-client-plugin");
+        if (body == null) {
+            b.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            b.header("Content-Type", contentType);
+            b.method(method, HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        }
+        HttpResponse<String> r = client.send(b.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        LOGGER.log(Level.FINE, method + " " + path + " -> " + r.statusCode());
+        return new Response(r.statusCode(), r.body() == null ? "" : r.body());
+    }
+
+    private static String baseUrl(String server) {
+        String url = server.trim();
+        if (!url.startsWith("https://") && !url.startsWith("http://")) {
+            url = "https://" + url;
+        }
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+
+    private static HttpClient getClient(String server, String certificateAuthority) throws GeneralSecurityException, IOException {
+        String key = baseUrl(server) + "\n" + (certificateAuthority == null ? "" : digest(certificateAuthority));
+        HttpClient c = clients.get(key);
+        if (c != null) {
+            return c;
+        }
+        HttpClient.Builder b = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT);
+        if (certificateAuthority != null) {
+            b.sslContext(sslContext(certificateAuthority));
+        }
+        c = b.build();
+        HttpClient existing = clients.putIfAbsent(key, c);
+        return existing != null ? existing : c;
+    }
+
+    private static SSLContext sslContext(String certificateAuthority) throws GeneralSecurityException, IOException {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        int i = 0;
+        for (Certificate cert : CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(certificateAuthority.getBytes(StandardCharsets.US_ASCII)))) {
+            trustStore.setCertificateEntry("ca-" + i++, cert);
+        }
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trustStore);
+        SSLContext ssl = SSLContext.getInstance("TLS");
+        ssl.init(null, tmf.getTrustManagers(), null);
+        return ssl;
+    }
+
+    private static String digest(String s) throws GeneralSecurityException {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return Base64.getEncoder().encodeToString(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Map<String, Object> withType(ResourceKind kind, Map<String, Object> item) {
+        // items of a list response carry neither kind nor apiVersion; oc fills them in
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("apiVersion", kind.getApiVersion());
+        m.put("kind", kind.kind);
+        m.putAll(item);
+        return m;
+    }
+
+    private ResourceKind kindOf(Map<String, Object> item) {
+        if (listKind != null) {
+            return listKind;
+        }
+        ResourceKind k = ResourceKind.lookup(String.valueOf(item.get("kind")));
+        return k != null ? k : targets.get(0).kind;
+    }
+
+    private static String nameOf(Map<String, Object> item) {
+        return String.valueOf(mapOf(item.get("metadata")).get("name"));
+    }
+
+    private static String resourceVersionOf(Map<String, Object> item) {
+        return String.valueOf(mapOf(item.get("metadata")).get("resourceVersion"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> mapOf(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : Collections.emptyMap();
+    }
+
+    private static Map<String, Object> parseObject(String json) throws IOException {
+        try {
+            return mapOf(new JsonSlurper().parseText(json));
+        } catch (RuntimeException e) {
+            throw new IOException("unexpected response from the API server: " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, Object> parseObjectQuietly(String json) {
+        try {
+            return parseObject(json);
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return verb + " " + (listKind != null ? listKind.getTypeName() : targets.size() + " object(s)") + " in "
+                + (namespace == null ? "the cluster" : namespace) + " on " + server;
+    }
+}
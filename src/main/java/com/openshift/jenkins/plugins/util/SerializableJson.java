@@ -0,0 +1,428 @@
+package com.openshift.jenkins.plugins.util;
+
+import groovy.json.JsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/***
+ * {@link SerializableJson} parses JSON straight into {@link HashMap}s and {@link ArrayList}s, which, unlike the LazyMaps
+ * produced by JsonSlurper, can be kept in CPS program state as they are. The input is read in a single pass from a
+ * {@link Reader}, so output captured by {@link OutputCapture} need not be turned into one big String first.
+ * <p>
+ * Values have the same types JsonSlurper would produce: Integer, Long or BigInteger for integral numbers, BigDecimal
+ * for the others, and String, Boolean or null. Malformed input raises a {@link JsonException}, as JsonSlurper does.
+ * <p>
+ * A {@link Projection} restricts the result to a set of fields; everything else is skipped while reading, without
+ * being materialized.
+ */
+public final class SerializableJson {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long consumed;
+    private final StringBuilder sb = new StringBuilder();
+    // object keys repeat across the items of a List; share one String per distinct key
+    private final HashMap<String, String> keys = new HashMap<String, String>();
+
+    private SerializableJson(Reader reader) {
+        this.reader = reader;
+    }
+
+    /***
+     * {@link Projection} is the set of fields to keep, given as dotted paths such as <code>status.readyReplicas</code>.
+     * Paths apply to every element of the arrays they traverse, so <code>spec.containers.image</code> keeps the image
+     * of every container. The paths apply to the object being parsed and, if it is an OpenShift List, to each of its
+     * items; the <code>kind</code> and <code>apiVersion</code> of both are always kept.
+     */
+    public static final class Projection {
+        private final HashMap<String, Projection> children = new HashMap<String, Projection>();
+        private boolean whole;
+
+        private Projection() {
+        }
+
+        /***
+         * @param fields dotted paths of the fields to keep
+         * @return the projection, or null, meaning everything, if fields is null or empty
+         */
+        public static Projection of(Collection<?> fields) {
+            if (fields == null || fields.isEmpty()) {
+                return null;
+            }
+            Projection object = new Projection();
+            for (Object field : fields) {
+                object.add(String.valueOf(field));
+            }
+            object.add("kind");
+            object.add("apiVersion");
+            Projection root = new Projection();
+            root.children.putAll(object.children);
+            root.children.put("items", object);
+            return root;
+        }
+
+        private void add(String path) {
+            Projection node = this;
+            for (String segment : path.split("\\.")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (node.whole) {
+                    return; // already kept in full
+                }
+                node = node.children.computeIfAbsent(segment, k -> new Projection());
+            }
+            node.whole = true;
+            node.children.clear();
+        }
+    }
+
+    public static HashMap parseMap(String json) {
+        return parseMap(json, null);
+    }
+
+    public static HashMap parseMap(String json, Projection projection) {
+        try {
+            return parseMap(new StringReader(json == null ? "" : json), projection);
+        } catch (IOException e) {
+            throw new JsonException("unable to read JSON", e); // not thrown by StringReader
+        }
+    }
+
+    public static HashMap parseMap(CapturedOutput output) throws IOException {
+        return parseMap(output, null);
+    }
+
+    public static HashMap parseMap(CapturedOutput output, Projection projection) throws IOException {
+        try (Reader r = output.openReader()) {
+            return parseMap(r, projection);
+        }
+    }
+
+    /***
+     * @param reader the JSON text; must hold a single object
+     * @param projection the fields to keep, null for all of them
+     * @return the object modeled as a HashMap
+     * @throws IOException if reading fails
+     */
+    public static HashMap parseMap(Reader reader, Projection projection) throws IOException {
+        Object o = parse(reader, projection);
+        if (!(o instanceof HashMap)) {
+            throw new JsonException("expected a JSON object but found " + (o == null ? "null" : o.getClass().getSimpleName()));
+        }
+        return (HashMap) o;
+    }
+
+    public static Object parse(Reader reader, Projection projection) throws IOException {
+        SerializableJson p = new SerializableJson(reader);
+        int c = p.skipWhitespace();
+        if (c < 0) {
+            throw new JsonException("no JSON content to parse");
+        }
+        // like JsonSlurper, anything after the first value is ignored
+        return p.readValue(projection);
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit) {
+            consumed += limit;
+            limit = reader.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            pos++;
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        for (;;) {
+            int c = peek();
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = next();
+        if (c != expected) {
+            throw error("expected '" + expected + "' but found " + describe(c));
+        }
+    }
+
+    private Object readValue(Projection projection) throws IOException {
+        if (projection != null && projection.whole) {
+            projection = null;
+        }
+        int c = skipWhitespace();
+        switch (c) {
+        case '{':
+            return readObject(projection);
+        case '[':
+            return readArray(projection);
+        case '"':
+            pos++;
+            return readString();
+        case 't':
+            readLiteral("true");
+            return Boolean.TRUE;
+        case 'f':
+            readLiteral("false");
+            return Boolean.FALSE;
+        case 'n':
+            readLiteral("null");
+            return null;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber();
+            }
+            throw error("unexpected " + describe(c));
+        }
+    }
+
+    private HashMap<String, Object> readObject(Projection projection) throws IOException {
+        pos++; // {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        if (skipWhitespace() == '}') {
+            pos++;
+            return map;
+        }
+        for (;;) {
+            if (skipWhitespace() != '"') {
+                throw error("expected an object key but found " + describe(peek()));
+            }
+            pos++;
+            String key = readString();
+            String shared = keys.putIfAbsent(key, key);
+            if (shared != null) {
+                key = shared;
+            }
+            skipWhitespace();
+            expect(':');
+            if (projection == null) {
+                map.put(key, readValue(null));
+            } else {
+                Projection child = projection.children.get(key);
+                if (child == null) {
+                    skipValue();
+                } else {
+                    map.put(key, readValue(child));
+                }
+            }
+            int c = skipWhitespace();
+            pos++;
+            if (c == '}') {
+                return map;
+            }
+            if (c != ',') {
+                pos--;
+                throw error("expected ',' or '}' but found " + describe(c));
+            }
+        }
+    }
+
+    private ArrayList<Object> readArray(Projection projection) throws IOException {
+        pos++; // [
+        ArrayList<Object> list = new ArrayList<Object>();
+        if (skipWhitespace() == ']') {
+            pos++;
+            return list;
+        }
+        for (;;) {
+            list.add(readValue(projection));
+            int c = skipWhitespace();
+            pos++;
+            if (c == ']') {
+                return list;
+            }
+            if (c != ',') {
+                pos--;
+                throw error("expected ',' or ']' but found " + describe(c));
+            }
+        }
+    }
+
+    /***
+     * Reads past the next value without building it.
+     */
+    private void skipValue() throws IOException {
+        int c = skipWhitespace();
+        if (c == '"') {
+            pos++;
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = next();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c < 0) {
+                    throw error("unterminated " + (depth > 0 ? "object or array" : "value"));
+                }
+            } while (depth > 0);
+        } else {
+            readValue(null); // scalars are cheap to read
+        }
+    }
+
+    // called with the opening quote consumed
+    private void skipString() throws IOException {
+        for (;;) {
+            int c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            } else if (c < 0) {
+                throw error("unterminated string");
+            }
+        }
+    }
+
+    // called with the opening quote consumed
+    private String readString() throws IOException {
+        sb.setLength(0);
+        for (;;) {
+            // copy runs of plain characters straight out of the buffer
+            int start = pos;
+            while (pos < limit) {
+                char ch = buffer[pos];
+                if (ch == '"' || ch == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            sb.append(buffer, start, pos - start);
+            int c = next();
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                readEscape();
+            } else if (c < 0) {
+                throw error("unterminated string");
+            } else {
+                pos--; // the buffer ran out mid-string and next() refilled it
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = next();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            sb.append((char) c);
+            break;
+        case 'b':
+            sb.append('\b');
+            break;
+        case 'f':
+            sb.append('\f');
+            break;
+        case 'n':
+            sb.append('\n');
+            break;
+        case 'r':
+            sb.append('\r');
+            break;
+        case 't':
+            sb.append('\t');
+            break;
+        case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+                int d = Character.digit(next(), 16);
+                if (d < 0) {
+                    throw error("invalid unicode escape");
+                }
+                code = (code << 4) | d;
+            }
+            sb.append((char) code);
+            break;
+        default:
+            throw error("invalid escape " + describe(c));
+        }
+    }
+
+    private Object readNumber() throws IOException {
+        sb.setLength(0);
+        boolean decimal = false;
+        for (;;) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                sb.append((char) c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+                sb.append((char) c);
+            } else {
+                break;
+            }
+            pos++;
+        }
+        String n = sb.toString();
+        try {
+            if (decimal) {
+                return new BigDecimal(n);
+            }
+            if (n.length() < 10) {
+                return Integer.valueOf(n);
+            }
+            BigInteger b = new BigInteger(n);
+            if (b.bitLength() < 32) {
+                return Integer.valueOf(b.intValue());
+            }
+            if (b.bitLength() < 64) {
+                return Long.valueOf(b.longValue());
+            }
+            return b;
+        } catch (NumberFormatException e) {
+            throw error("invalid number " + n);
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw error("invalid literal, expected " + literal);
+            }
+        }
+    }
+
+    private static String describe(int c) {
+        return c < 0 ? "end of input" : "'" + (char) c + "'";
+    }
+
+    private JsonException error(String message) {
+        return new JsonException(message + " at character " + (consumed + pos));
+    }
+}
@@ -0,0 +1,159 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/***
+ * {@link StreamMatcher} looks for a set of literal patterns in output as it streams by, without keeping the output
+ * around. The patterns are compiled once into an Aho-Corasick automaton over their UTF-8 bytes, so each byte of
+ * output costs a single table lookup, however many patterns there are and however long the output grows. Since it
+ * works on bytes, a multi-byte character split across two reads is matched as well.
+ * <p>
+ * Only the last {@link #TAIL_SIZE} bytes are kept, for the messages reporting a match or a failure.
+ */
+public class StreamMatcher {
+
+    public static final int TAIL_SIZE = 4096;
+
+    private final String[] patterns;
+    // delta[state * 256 + b] is the state after reading b in state; state 0 is the root
+    private final int[] delta;
+    // output[state] has bit i set if pattern i ends in state, directly or through its suffix links
+    private final long[] output;
+    private int state;
+    private long matched;
+
+    private final byte[] tail = new byte[TAIL_SIZE];
+    private int tailStart;
+    private int tailCount;
+
+    /***
+     * @param patterns the patterns to look for, at most 64; null or empty patterns never match
+     */
+    public StreamMatcher(String... patterns) {
+        if (patterns.length > 64) {
+            throw new IllegalArgumentException("at most 64 patterns are supported");
+        }
+        this.patterns = patterns.clone();
+        byte[][] bytes = new byte[patterns.length][];
+        int states = 1;
+        for (int i = 0; i < patterns.length; i++) {
+            bytes[i] = patterns[i] == null ? new byte[0] : patterns[i].getBytes(StandardCharsets.UTF_8);
+            states += bytes[i].length;
+        }
+
+        // the trie of the patterns, with -1 for missing edges
+        int[] trie = new int[states * 256];
+        Arrays.fill(trie, -1);
+        long[] out = new long[states];
+        int count = 1;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i].length == 0) {
+                continue;
+            }
+            int s = 0;
+            for (byte b : bytes[i]) {
+                int edge = s * 256 + (b & 0xff);
+                if (trie[edge] < 0) {
+                    trie[edge] = count++;
+                }
+                s = trie[edge];
+            }
+            out[s] |= 1L << i;
+        }
+
+        // turn the trie into a complete automaton, breadth first so each state's suffix link is done before it
+        int[] fail = new int[count];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int b = 0; b < 256; b++) {
+            if (trie[b] < 0) {
+                trie[b] = 0;
+            } else {
+                fail[trie[b]] = 0;
+                queue.add(trie[b]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            out[s] |= out[fail[s]];
+            for (int b = 0; b < 256; b++) {
+                int t = trie[s * 256 + b];
+                if (t < 0) {
+                    trie[s * 256 + b] = trie[fail[s] * 256 + b];
+                } else {
+                    fail[t] = trie[fail[s] * 256 + b];
+                    queue.add(t);
+                }
+            }
+        }
+        this.delta = Arrays.copyOf(trie, count * 256);
+        this.output = Arrays.copyOf(out, count);
+    }
+
+    /***
+     * Feeds the next chunk of output.
+     * @return true if a pattern not matched before was found in the chunk
+     */
+    public synchronized boolean update(byte[] b, int off, int len) {
+        long before = matched;
+        int s = state;
+        for (int i = off; i < off + len; i++) {
+            s = delta[(s << 8) | (b[i] & 0xff)];
+            matched |= output[s];
+        }
+        state = s;
+        remember(b, off, len);
+        return matched != before;
+    }
+
+    /***
+     * @return whether pattern i, as numbered by the constructor, has been found
+     */
+    public synchronized boolean isMatched(int i) {
+        return (matched & (1L << i)) != 0;
+    }
+
+    public String getPattern(int i) {
+        return patterns[i];
+    }
+
+    /***
+     * @return the last {@link #TAIL_SIZE} bytes of output, decoded as UTF-8
+     */
+    public synchronized String getTail() {
+        byte[] copy = new byte[tailCount];
+        int first = Math.min(tailCount, TAIL_SIZE - tailStart);
+        System.arraycopy(tail, tailStart, copy, 0, first);
+        System.arraycopy(tail, 0, copy, first, tailCount - first);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    /***
+     * Forgets the output seen so far, e.g. when the watched command is started again.
+     */
+    public synchronized void reset() {
+        state = 0;
+        matched = 0;
+        tailStart = 0;
+        tailCount = 0;
+    }
+
+    private void remember(byte[] b, int off, int len) {
+        if (len >= TAIL_SIZE) {
+            System.arraycopy(b, off + len - TAIL_SIZE, tail, 0, TAIL_SIZE);
+            tailStart = 0;
+            tailCount = TAIL_SIZE;
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            int end = (tailStart + tailCount) % TAIL_SIZE;
+            tail[end] = b[i];
+            if (tailCount < TAIL_SIZE) {
+                tailCount++;
+            } else {
+                tailStart = (tailStart + 1) % TAIL_SIZE;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.openshift.jenkins.plugins.util;
+
+import java.util.function.BooleanSupplier;
+
+/***
+ * {@link WatchEventCoalescer} collects the events of a watch so that a burst of them (a rollout touching 50 pods,
+ * for instance) is answered by a single evaluation of the watch closure. A batch is released once no further event
+ * arrived for the coalescing window, or once its first event has waited for the maximum latency, whichever comes
+ * first.
+ * <p>
+ * Tuned with the following environment variables on the controller:
+ * <ul>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_WATCH_COALESCE_MILLIS - the coalescing window (default 500); 0 releases each batch
+ * immediately, which still merges the events received while the closure was running</li>
+ * <li>OPENSHIFT_CLIENT_PLUGIN_WATCH_MAX_LATENCY_MILLIS - the longest an event waits for its batch (default 2000)</li>
+ * </ul>
+ */
+public class WatchEventCoalescer {
+
+    public static final long WINDOW_MILLIS = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_WATCH_COALESCE_MILLIS", 500);
+    public static final long MAX_LATENCY_MILLIS = EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_WATCH_MAX_LATENCY_MILLIS", 2000);
+
+    // upper bound of a wait while nothing is pending, so a missed wake up only delays noticing the end of the watch
+    private static final long IDLE_WAIT_MILLIS = 1000;
+
+    private final long windowMillis;
+    private final long maxLatencyMillis;
+
+    private int pending;
+    private long firstAt;
+    private long lastAt;
+
+    private long received;
+    private long batches;
+
+    public WatchEventCoalescer() {
+        this(WINDOW_MILLIS, MAX_LATENCY_MILLIS);
+    }
+
+    public WatchEventCoalescer(long windowMillis, long maxLatencyMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxLatencyMillis = Math.max(this.windowMillis, maxLatencyMillis);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /***
+     * Records an event.
+     */
+    public synchronized void offer() {
+        long now = now();
+        if (pending == 0) {
+            firstAt = now;
+        }
+        lastAt = now;
+        pending++;
+        received++;
+        notifyAll();
+    }
+
+    /***
+     * Wakes up {@link #awaitBatch(BooleanSupplier)}, e.g. because the source of events has stopped.
+     */
+    public synchronized void wake() {
+        notifyAll();
+    }
+
+    /***
+     * Waits for the next batch of events.
+     * @param finished tells whether the source of events has stopped; pending events are then released at once
+     * @return the number of events in the batch, or 0 if the source has stopped and nothing is pending
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized int awaitBatch(BooleanSupplier finished) throws InterruptedException {
+        for (; ; ) {
+            boolean done = finished.getAsBoolean();
+            if (pending > 0) {
+                long due = Math.min(lastAt + windowMillis, firstAt + maxLatencyMillis);
+                long now = now();
+                if (done || now >= due) {
+                    int batch = pending;
+                    pending = 0;
+                    batches++;
+                    return batch;
+                }
+                wait(due - now);
+            } else if (done) {
+                return 0;
+            } else {
+                wait(IDLE_WAIT_MILLIS);
+            }
+        }
+    }
+
+    /***
+     * @return the number of events received
+     */
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    /***
+     * @return the number of batches released
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /***
+     * @return the number of released events which did not cause an evaluation of their own
+     */
+    public synchronized long getCoalesced() {
+        return received - pending - batches;
+    }
+}
@@ -0,0 +1,460 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.QuotedStringTokenizer;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * {@link WatchHub} lets concurrent watches of the same objects share one `oc get -w` process. Watches are keyed by
+ * their full command line, i.e. cluster, project, kind, selector and credentials. The first subscriber starts the
+ * upstream watch; later subscribers are attached to it and receive its events through their own
+ * {@link WatchEventCoalescer}. The upstream is stopped when the last subscriber leaves.
+ * <p>
+ * The upstream runs on a thread of the hub, but `oc` runs in the workspace, with the launcher and environment, of one
+ * subscriber, its owner, initially the one which started it. When the owner leaves while others remain, `oc` is
+ * stopped and resumed in the context of the next subscriber, so a watch never runs on behalf of a finished build.
+ * Output of the upstream itself, such as its stderr, goes to the owner's log only, and to the controller log.
+ * <p>
+ * When the watched objects have a known API path (see {@link Source#resumePath}) the upstream works like a
+ * Kubernetes reflector: it lists them to learn the resourceVersion of the collection, then watches from there with
+ * bookmarks enabled. Whenever `oc` ends normally, e.g. because the server timed the watch out, it resumes from the
+ * last resourceVersion of a watch event or bookmark, and lists again only if the server no longer knows that version
+ * (410 Gone). Other watches run `oc get -w`, which lists and watches the objects again each time.
+ */
+public final class WatchHub {
+    private static final Logger LOGGER = Logger.getLogger(WatchHub.class.getName());
+
+    // the parts of a watch event the hub looks at
+    private static final SerializableJson.Projection WATCH_EVENT = SerializableJson.Projection.of(
+            Arrays.asList("type", "object.code", "object.reason", "object.metadata.resourceVersion"));
+    // the part of a list the hub looks at
+    private static final SerializableJson.Projection LIST = SerializableJson.Projection.of(
+            Arrays.asList("metadata.resourceVersion"));
+
+    private static final HashMap<String, Upstream> UPSTREAMS = new HashMap<String, Upstream>();
+
+    // upstream watches run for as long as they have subscribers, so they get threads of their own
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "OpenShift shared watch"));
+
+    private WatchHub() {
+    }
+
+    /***
+     * {@link Source} describes a watch and where to run it, should it have to be started.
+     */
+    public static class Source {
+        private final ClientCommandBuilder cmdBuilder;
+        private final String resumePath;
+        private final FilePath filePath;
+        private final Launcher launcher;
+        private final EnvVars envVars;
+
+        /***
+         * @param cmdBuilder the `oc get -w` command, run if resumePath is null or the objects cannot be listed there
+         * @param resumePath the API path of the watched objects, with their selectors as query parameters, e.g.
+         *                   <code>/api/v1/namespaces/p/pods?labelSelector=app%3Dweb</code>; null if the watch cannot
+         *                   be resumed
+         */
+        public Source(ClientCommandBuilder cmdBuilder, String resumePath, FilePath filePath, Launcher launcher, EnvVars envVars) {
+            this.cmdBuilder = cmdBuilder;
+            this.resumePath = resumePath;
+            this.filePath = filePath;
+            this.launcher = launcher;
+            this.envVars = envVars;
+        }
+
+        /***
+         * Runs `oc` in this context until it ends or the thread is interrupted.
+         * @param builder the command to run
+         * @return the exit status of `oc`
+         */
+        int run(ClientCommandBuilder builder, ClientCommandRunner.OutputObserver stdout,
+                ClientCommandRunner.OutputObserver stderr, TaskListener listener) throws Exception {
+            CertificateCache.verify(filePath, builder.caPath);
+            String[] command = QuotedStringTokenizer.tokenize(builder.asString(false));
+            command = ClientCommandBuilder.fixPathInCommandArray(command, envVars, listener, filePath, launcher,
+                    builder.logLevel > 0);
+            ClientCommandRunner runner = new ClientCommandRunner(command, filePath, envVars, stdout, stderr,
+                    ClientCommandExecutor.Workload.STREAM, builder.server);
+            return runner.run(launcher);
+        }
+
+        String key() {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                // the command line holds the token, which must not linger on the heap as a map key
+                byte[] digest = md.digest(cmdBuilder.asString(false).getBytes(StandardCharsets.UTF_8));
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest) {
+                    sb.append(String.format("%02x", b));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // SHA-256 is always available
+            }
+        }
+    }
+
+    /***
+     * {@link Subscription} is one watch attached to an upstream watch.
+     */
+    public static final class Subscription implements AutoCloseable {
+        private final Source source;
+        private final WatchEventCoalescer events;
+        private final TaskListener listener;
+        private final boolean verbose;
+        private Upstream upstream;
+        private volatile boolean finished;
+        private volatile Throwable failure;
+
+        private Subscription(Source source, WatchEventCoalescer events, TaskListener listener, boolean verbose) {
+            this.source = source;
+            this.events = events;
+            this.listener = listener;
+            this.verbose = verbose;
+        }
+
+        /***
+         * Waits for the next batch of events, see {@link WatchEventCoalescer#awaitBatch}.
+         * @return the number of events in the batch, or 0 if the upstream watch has ended
+         */
+        public int awaitBatch() throws InterruptedException {
+            return events.awaitBatch(() -> finished);
+        }
+
+        /***
+         * @return why the upstream watch ended, or null if it did not end
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /***
+         * @return true if the upstream watch runs, or last ran, in the context of this subscription
+         */
+        public boolean isOwner() {
+            return upstream != null && upstream.owner == this;
+        }
+
+        private void finish(Throwable t) {
+            failure = t;
+            finished = true;
+            events.wake();
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+
+    /***
+     * Attaches to the upstream watch of source, starting it if there is none. A subscription joining a running watch
+     * receives one event straight away, standing in for the listing it missed.
+     * @param verbose whether the watch output is copied to the listener
+     */
+    public static Subscription subscribe(Source source, WatchEventCoalescer events, TaskListener listener, boolean verbose) {
+        String key = source.key();
+        Subscription subscription = new Subscription(source, events, listener, verbose);
+        synchronized (UPSTREAMS) {
+            Upstream upstream = UPSTREAMS.get(key);
+            if (upstream == null) {
+                upstream = new Upstream(key, source, subscription);
+                UPSTREAMS.put(key, upstream);
+                upstream.subscribers.add(subscription);
+                subscription.upstream = upstream;
+                upstream.start();
+            } else {
+                upstream.subscribers.add(subscription);
+                subscription.upstream = upstream;
+                listener.getLogger().println("Sharing the watch already running for " + upstream.subscribers.size() + " watchers");
+                events.offer();
+            }
+        }
+        return subscription;
+    }
+
+    private static void unsubscribe(Subscription subscription) {
+        Upstream upstream = subscription.upstream;
+        if (upstream == null) {
+            return;
+        }
+        synchronized (UPSTREAMS) {
+            upstream.subscribers.remove(subscription);
+            if (upstream.subscribers.isEmpty()) {
+                if (UPSTREAMS.get(upstream.key) == upstream) {
+                    UPSTREAMS.remove(upstream.key);
+                    upstream.stop();
+                }
+            } else if (upstream.owner == subscription) {
+                upstream.handOver(upstream.subscribers.get(0));
+            }
+        }
+    }
+
+    /***
+     * @return the number of upstream watches running
+     */
+    public static int getUpstreamCount() {
+        synchronized (UPSTREAMS) {
+            return UPSTREAMS.size();
+        }
+    }
+
+    private static final class Upstream implements Runnable {
+        private final String key;
+        // the watch, which is the same for all subscribers; where `oc` runs is taken from the owner
+        private final Source source;
+        private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<Subscription>();
+        private volatile Subscription owner;
+        // set when the owner changed and `oc` is interrupted to run again in the new owner's context
+        private final AtomicBoolean handover = new AtomicBoolean();
+        private volatile boolean stopped;
+        private volatile Thread thread;
+        // the last resourceVersion seen, and whether the server no longer knows it (410 Gone)
+        private final AtomicReference<String> resourceVersion = new AtomicReference<String>();
+        private final AtomicBoolean expired = new AtomicBoolean();
+        // false once listing at the resume path failed; `oc get -w` is run instead
+        private volatile boolean resumable;
+        private final StringBuffer stderr = new StringBuffer();
+        private Future<?> future;
+
+        Upstream(String key, Source source, Subscription owner) {
+            this.key = key;
+            this.source = source;
+            this.owner = owner;
+            this.resumable = source.resumePath != null;
+        }
+
+        void start() {
+            future = POOL.submit(this);
+        }
+
+        void stop() {
+            stopped = true;
+            // interrupting the runner kills `oc`
+            future.cancel(true);
+        }
+
+        void handOver(Subscription next) {
+            owner = next;
+            handover.set(true);
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt(); // kills `oc`, see run()
+            }
+        }
+
+        // only the owner's log gets the upstream's own output, the others just see their events
+        private void log(String message, boolean verboseOnly) {
+            Subscription s = owner;
+            if (s != null && (!verboseOnly || s.verbose)) {
+                s.listener.getLogger().println(message);
+            }
+            if (!verboseOnly) {
+                LOGGER.log(Level.FINE, "shared watch " + key.substring(0, 12) + ": " + message);
+            }
+        }
+
+        private void offer() {
+            for (Subscription s : subscribers) {
+                s.events.offer();
+            }
+        }
+
+        private boolean onListLine(String line) {
+            log("Received verbose watch output>>>\n" + line + "\n<<<", true);
+            offer();
+            return false; // don't interrupt `oc`
+        }
+
+        private boolean onResumeLine(String line) {
+            if (line.trim().isEmpty()) {
+                return false;
+            }
+            log("Received verbose watch event>>>\n" + line + "\n<<<", true);
+            HashMap event;
+            try {
+                event = SerializableJson.parseMap(line, WATCH_EVENT);
+            } catch (groovy.json.JsonException e) {
+                LOGGER.log(Level.FINE, "ignoring unexpected watch output " + line, e);
+                return false;
+            }
+            Object type = event.get("type");
+            Map object = event.get("object") instanceof Map ? (Map) event.get("object") : null;
+            if ("ERROR".equals(type)) {
+                // most likely 410 Gone: the resourceVersion is too old; any other error also needs a fresh list
+                log("Watch from resourceVersion " + resourceVersion.get() + " failed with "
+                        + (object == null ? "an unknown error" : object.get("code") + " " + object.get("reason")), false);
+                expired.set(true);
+                return true; // interrupt `oc`
+            }
+            Map metadata = object != null && object.get("metadata") instanceof Map ? (Map) object.get("metadata") : null;
+            if (metadata != null && metadata.get("resourceVersion") != null) {
+                resourceVersion.set(String.valueOf(metadata.get("resourceVersion")));
+            }
+            if (!"BOOKMARK".equals(type)) {
+                offer();
+            }
+            return false; // don't interrupt `oc`
+        }
+
+        private boolean onErrorLine(String line) {
+            stderr.append(line).append('\n');
+            log("Received error output>>>\n" + line + "\n<<<", false);
+            return false; // don't interrupt `oc`
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            Throwable failure = null;
+            try {
+                watch();
+            } catch (InterruptedException e) {
+                // stopped because the last subscriber left
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                thread = null;
+                synchronized (UPSTREAMS) {
+                    if (UPSTREAMS.get(key) == this) {
+                        UPSTREAMS.remove(key);
+                    }
+                }
+                for (Subscription s : subscribers) {
+                    s.finish(failure);
+                }
+            }
+        }
+
+        private void watch() throws Exception {
+            long reWatchSleep = 250;
+            for (; ; ) {
+                Subscription current = owner;
+                try {
+                    if (stopped) {
+                        return;
+                    }
+                    watchOnce(current.source, current.listener);
+                    if (resumable && resourceVersion.get() != null) {
+                        log("Resuming watch from resourceVersion " + resourceVersion.get() + " in " + reWatchSleep + "ms", false);
+                    } else {
+                        log("Checking watch output and running watch closure again in " + reWatchSleep + "ms", false);
+                    }
+                    Thread.sleep(reWatchSleep);
+                    if (reWatchSleep < 10000) { // Gradually re-watch less frequently
+                        reWatchSleep *= 1.2f;
+                    }
+                } catch (Exception e) {
+                    // the owner left: whatever `oc` was doing, carry on in the context of the next one
+                    if (stopped || !handover.getAndSet(false)) {
+                        throw e;
+                    }
+                    Thread.interrupted();
+                    log("Continuing the watch shared with a build which has finished", false);
+                }
+            }
+        }
+
+        /***
+         * Runs `oc` once, until it ends or is interrupted.
+         */
+        private void watchOnce(Source context, TaskListener listener) throws Exception {
+            if (resumable && resourceVersion.get() == null) {
+                list(context, listener);
+            }
+            if (!resumable) {
+                stderr.setLength(0);
+                int exitStatus = context.run(context.cmdBuilder, this::onListLine, this::onErrorLine, listener);
+                if (exitStatus != 0) {
+                    String msg = "OpenShift Client exited with status code " + Integer.toString(exitStatus)
+                            + ", command: " + context.cmdBuilder.buildCommand(true)
+                            + ", stderr: " + stderr.toString().trim();
+                    throw new AbortException(msg);
+                }
+                return;
+            }
+            // only reports changes after the resourceVersion instead of listing everything again
+            String version = resourceVersion.get();
+            ClientCommandBuilder builder = raw(context.cmdBuilder,
+                    "watch=true&allowWatchBookmarks=true&resourceVersion=" + encode(version));
+            stderr.setLength(0);
+            int exitStatus = context.run(builder, this::onResumeLine, this::onErrorLine, listener);
+            if (expired.getAndSet(false)) {
+                log("Listing the watched objects again", false);
+                resourceVersion.set(null);
+            } else if (exitStatus != 0) {
+                log("Resuming the watch failed with status code " + exitStatus + "; listing the watched objects again", false);
+                resourceVersion.set(null);
+            }
+        }
+
+        /***
+         * Lists the watched objects for the resourceVersion of the collection, which the watch then starts from. Only
+         * one object is asked for, the listing itself is reported as one event. Falls back to `oc get -w` when the
+         * objects cannot be listed at the resume path, e.g. because the cluster serves the kind under another API
+         * version.
+         */
+        private void list(Source context, TaskListener listener) throws Exception {
+            StringBuilder out = new StringBuilder();
+            stderr.setLength(0);
+            int exitStatus = context.run(raw(context.cmdBuilder, "limit=1"), line -> {
+                out.append(line).append('\n');
+                return false; // don't interrupt `oc`
+            }, this::onErrorLine, listener);
+            String version = null;
+            if (exitStatus == 0) {
+                try {
+                    Object metadata = SerializableJson.parseMap(out.toString(), LIST).get("metadata");
+                    Object v = metadata instanceof Map ? ((Map) metadata).get("resourceVersion") : null;
+                    version = v == null ? null : String.valueOf(v);
+                } catch (groovy.json.JsonException e) {
+                    LOGGER.log(Level.FINE, "unexpected list output " + out, e);
+                }
+            }
+            if (version == null || version.isEmpty()) {
+                log("Could not list the watched objects at " + source.resumePath + " (status code " + exitStatus
+                        + "); watching with oc get -w instead", false);
+                resumable = false;
+                return;
+            }
+            log("Watching from resourceVersion " + version, true);
+            resourceVersion.set(version);
+            offer();
+        }
+
+        // oc get --raw on the resume path with the given query parameters
+        private ClientCommandBuilder raw(ClientCommandBuilder cmdBuilder, String parameters) {
+            String path = source.resumePath + (source.resumePath.indexOf('?') < 0 ? '?' : '&') + parameters;
+            return cmdBuilder.withVerb("get", Arrays.asList("--raw", path));
+        }
+
+        private static String encode(String s) throws UnsupportedEncodingException {
+            return URLEncoder.encode(s, "UTF-8");
+        }
+    }
+}
@@ -5,12 +5,19 @@ import com.cloudbees.plugins.credentials.CredentialsProvider
 import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials
 import com.openshift.jenkins.plugins.pipeline.OcAction
 import com.openshift.jenkins.plugins.pipeline.OcContextInit
+import com.openshift.jenkins.plugins.util.BlobStore
+import com.openshift.jenkins.plugins.util.CertificateCache
+import com.openshift.jenkins.plugins.util.EnvSettings
+import com.openshift.jenkins.plugins.util.OcCapabilities
+import com.openshift.jenkins.plugins.util.RestClientEngine
+import com.openshift.jenkins.plugins.util.SerializableJson
 
 import groovy.json.JsonOutput
 import groovy.json.JsonSlurper
 import hudson.AbortException
 import hudson.FilePath
 import hudson.Util
+import hudson.model.Run
 
 import java.io.IOException
 import java.lang.management.BufferPoolMXBean
@@ -38,6 +45,26 @@ class OpenShiftDSL implements Serializable {
 
     private int logLevel = 0; // Modified by calls to openshift.logLevel
 
+    private String engine = null; // Modified by calls to openshift.engine; null selects the controller default
+
+    // Modified by calls to openshift.parallelism; see fanOut
+    private int defaultParallelism = 1;
+    private String defaultParallelPolicy = PARALLEL_COLLECT_ALL;
+
+    static final String PARALLEL_COLLECT_ALL = "collectAll";
+    static final String PARALLEL_FAIL_FAST = "failFast";
+
+    // verbs which never change anything on the cluster; any other verb invalidates the read cache
+    private static final List<String> READ_ONLY_VERBS = ["get", "describe", "logs", "help", "version", "whoami", "explain", "api-resources", "api-versions"];
+
+    // Results of selector name queries, per cluster; see readCacheGet. Not kept across controller restarts.
+    private transient HashMap<String, HashMap<String, Object[]>> readCache;
+
+    // selector verbs which accept several objects in one invocation; see OpenShiftResourceSelector.batchForEach
+    private static final List<String> BATCHED_VERBS = ["scale", "cancel-build", "patch", "volume"];
+    // batched verbs which may safely be run again on an object the batch may already have changed; see runBatch
+    private static final List<String> IDEMPOTENT_BATCHED_VERBS = ["scale", "cancel-build"];
+
     private HashMap<String,Capabilities> nodeCapabilities = new HashMap<String,Capabilities>();
 
     private String lockName = "";
@@ -58,6 +85,17 @@ class OpenShiftDSL implements Serializable {
         }
     }
     
+    /**
+     * Stores content in the build's BlobStore, so that step arguments need only carry a reference to it.
+     * @param s The content
+     * @return The reference to the content
+     */
+    @NonCPS
+    private static String storeBlob(String s) {
+        CpsFlowExecution execution = CpsThread.current().getExecution();
+        return BlobStore.put(BlobStore.directory((Run) execution.getOwner().getExecutable()), s);
+    }
+
     public OpenShiftDSL(org.jenkinsci.plugins.workflow.cps.CpsScript script) {
         this.script = script
     }
@@ -65,15 +103,12 @@ class OpenShiftDSL implements Serializable {
     public synchronized Capabilities getCapabilities() {
         String key = script.env.NODE_NAME
         Capabilities caps = nodeCapabilities.get(key)
-        if (caps != null) {
+        // capabilities recorded before the plugin probed oc carry no OcCapabilities; probe again
+        if (caps != null && caps.isProbed()) {
             return caps
         } else {
-            caps = new Capabilities()
-            ArrayList<String> g = new ArrayList<String>();
-            g.add("get");
-            OcAction.OcActionResult versionCheck = (OcAction.OcActionResult)script._OcAction(buildCommonArgs("help", g, null, null));
-            LOGGER.log(Level.FINE, "getCapabilities return from oc help get " + versionCheck.out);
-            caps.ignoreNotFound = versionCheck.out.contains("--ignore-not-found")
+            // probes oc only the first time this agent's binary is seen by the controller; see OcCapabilityRegistry
+            caps = new Capabilities(script._OcCapabilities(verbose: logLevel > 0))
             nodeCapabilities.put(key, caps)
             LOGGER.log(Level.FINE, "getCapabilities nodeCapabilities: " + nodeCapabilities);
             return caps
@@ -203,11 +238,9 @@ class OpenShiftDSL implements Serializable {
                 /**
                  * The certificate authority content must be written to the agent's file
                  * system. It would be nice if we could set the name in an environment variable
-                 * instead.
+                 * instead. The file is shared by all builds on the agent; see CertificateCache.
                  */
-                FilePath ca = exec.getWorkspaceFilePath().createTextTempFile("serverca", ".crt", serverCertificateAuthorityContent, true);
-                destroyOnReturn.add(ca);
-                this.@serverCertificateAuthorityPath = ca.getRemote();
+                this.@serverCertificateAuthorityPath = CertificateCache.getPath(exec.getWorkspaceFilePath(), serverCertificateAuthorityContent);
             }
         }
 
@@ -437,6 +470,161 @@ class OpenShiftDSL implements Serializable {
         logLevel(v?8:0)
     }
 
+    public void engine(Object oengine) {
+        String e = toSingleString(oengine);
+        if (e != null && e != RestClientEngine.OC && e != RestClientEngine.NATIVE) {
+            throw new AbortException("Unknown engine " + e + "; expected " + RestClientEngine.OC + " or " + RestClientEngine.NATIVE);
+        }
+        this.@engine = e;
+    }
+
+    public void parallelism(int n, String policy=PARALLEL_COLLECT_ALL) {
+        checkParallelPolicy(policy);
+        this.@defaultParallelism = n;
+        this.@defaultParallelPolicy = policy;
+    }
+
+    @NonCPS
+    private static void checkParallelPolicy(String policy) throws AbortException {
+        if (policy != null && policy != PARALLEL_COLLECT_ALL && policy != PARALLEL_FAIL_FAST) {
+            throw new AbortException("Unknown parallel policy " + policy + "; expected " + PARALLEL_COLLECT_ALL + " or " + PARALLEL_FAIL_FAST);
+        }
+    }
+
+    @NonCPS
+    private static boolean isFailedOutcome(Object o) {
+        if (o instanceof OcAction.OcActionResult) {
+            return ((OcAction.OcActionResult)o).isFailed();
+        }
+        if (o instanceof Result) {
+            return ((Result)o).getStatus() != 0;
+        }
+        if (o instanceof List) {
+            for (Object e : (List)o) {
+                if (isFailedOutcome(e)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calls body once for each item, running up to parallelism calls at a time in parallel branches. The branches
+     * share currentContext, so body must not enter withCluster, withProject or withCredentials.
+     * Results are returned in the order of the items. With the failFast policy, no further items are started
+     * once a call has failed (an OcActionResult with a non-zero status, or an exception) and the entries of
+     * the items which were not started are null.
+     */
+    private List fanOut(int parallelism, String policy, List items, Closure body) {
+        boolean failFast = (policy == PARALLEL_FAIL_FAST);
+        Object[] results = new Object[items.size()];
+        if (parallelism <= 1 || items.size() <= 1) {
+            for (int i = 0; i < items.size(); i++) {
+                results[i] = body.call(items.get(i));
+                if (failFast && isFailedOutcome(results[i])) {
+                    break;
+                }
+            }
+            return Arrays.asList(results);
+        }
+
+        // each branch is a worker pulling the next item; CPS runs branches on a single thread, so the
+        // shared cursor needs no locking
+        int[] next = new int[1];
+        boolean[] failed = new boolean[1];
+        Map branches = [:];
+        int workers = Math.min(parallelism, items.size());
+        for (int w = 0; w < workers; w++) {
+            branches["openshift-" + w] = {
+                while (!failed[0] && next[0] < items.size()) {
+                    int i = next[0];
+                    next[0] = i + 1;
+                    results[i] = body.call(items.get(i));
+                    if (failFast && isFailedOutcome(results[i])) {
+                        failed[0] = true;
+                    }
+                }
+            };
+        }
+        if (failFast) {
+            branches.put("failFast", true);
+        }
+        script.parallel(branches);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs an oc invocation built by buildCommonArgs. Invocations which may change the cluster invalidate the
+     * read cache of that cluster, both before (so concurrent branches do not fill it with stale names) and after.
+     */
+    private OcAction.OcActionResult ocAction(Map args) {
+        boolean mutating = !READ_ONLY_VERBS.contains(args.verb) || args.pipeVerb != null;
+        if (mutating) {
+            readCacheInvalidate((String)args.server);
+        }
+        OcAction.OcActionResult r = (OcAction.OcActionResult)script._OcAction(args);
+        if (mutating) {
+            readCacheInvalidate((String)args.server);
+        }
+        return r;
+    }
+
+    @NonCPS
+    private static long readCacheTtlMillis() {
+        return EnvSettings.getLong("OPENSHIFT_CLIENT_PLUGIN_READ_CACHE_TTL_MILLIS", 5000L);
+    }
+
+    /**
+     * @return the key of a query in the read cache: the cluster, project and credentials of the context,
+     *          plus the arguments of the query
+     */
+    @NonCPS
+    private static String readCacheKey(Map args) {
+        String token = (String)args.token;
+        String tokenDigest = "";
+        if (token != null) {
+            tokenDigest = java.security.MessageDigest.getInstance("SHA-256").digest(token.getBytes("UTF-8")).encodeBase64().toString();
+        }
+        return [args.project, tokenDigest, args.verb, args.verbArgs, args.userArgs, args.options].join("\n");
+    }
+
+    @NonCPS
+    private ArrayList<String> readCacheGet(String server, String key) {
+        if (readCache == null || !readCache.containsKey(server)) {
+            return null;
+        }
+        Object[] entry = readCache.get(server).get(key);
+        if (entry == null || System.currentTimeMillis() - ((Long)entry[0]).longValue() > readCacheTtlMillis()) {
+            return null;
+        }
+        return new ArrayList<String>((List<String>)entry[1]);
+    }
+
+    @NonCPS
+    private void readCachePut(String server, String key, List<String> names) {
+        if (readCacheTtlMillis() <= 0) {
+            return;
+        }
+        if (readCache == null) {
+            readCache = new HashMap<String, HashMap<String, Object[]>>();
+        }
+        if (!readCache.containsKey(server)) {
+            readCache.put(server, new HashMap<String, Object[]>());
+        }
+        Object[] entry = new Object[2];
+        entry[0] = Long.valueOf(System.currentTimeMillis());
+        entry[1] = new ArrayList<String>(names);
+        readCache.get(server).put(key, entry);
+    }
+
+    @NonCPS
+    private void readCacheInvalidate(String server) {
+        if (readCache != null) {
+            readCache.remove(server);
+        }
+    }
+
     private Map buildCommonArgs(Object overb, List verbArgs, Object[] ouserArgsArray, Object... ooverrideArgs) {
         return buildCommonArgs(true, overb, verbArgs, ouserArgsArray, ooverrideArgs)
     }
@@ -502,6 +690,8 @@ class OpenShiftDSL implements Serializable {
                     token:currentContext.getToken(),
                     logLevel:logLevel
             ]
+        if (engine != null)
+            args.put("engine", engine)
         return args;
     }
 
@@ -535,45 +725,75 @@ class OpenShiftDSL implements Serializable {
         return results;
     }
 
+    /**
+     * Groups qualified names into batches of at most batchSize names for verbs which accept several objects
+     * per invocation. Names whose unqualified part is shared with another name (e.g. dc/frontend and svc/frontend)
+     * are given batches of their own, since their output could not be told apart.
+     */
     @NonCPS
-    public HashMap serializableMap(String json) {
-        JsonSlurper js = new JsonSlurper();
-        Map m = js.parseText(json);
-
-        /**
-         * The Map produced by JsonSlurper is not serializable. If we return it to the user's DSL script and they store it in a global variable,
-         * the Jenkins CPS engine will attempt to serialize it before the next AsynchronousStepExecution. This leads to a
-         * exceptions like: java.io.NotSerializableException: groovy.json.internal.LazyMap
-         * To avoid this, everything we return to the user must be serializable -- transform the JsonSlurper into a serializable map.
-         * NonCPS methods may not call non-NonCPS methods and arguments/returns must be serializable.
-         * http://stackoverflow.com/questions/37864542/jenkins-pipeline-notserializableexception-groovy-json-internal-lazymap
-         */
-
-        HashMap master = new HashMap(m);
-        Stack<HashMap> s = new Stack<HashMap>();
-        s.push(master);
-        while (s.size() > 0) {
-            HashMap target = s.pop();
-            for (Map.Entry e : target.entrySet()) {
-                if (e.getValue() instanceof Map) {
-                    HashMap he = new HashMap((Map)e.getValue());
-                    e.setValue(he);
-                    s.push(he);
-                }
-                if (e.getValue() instanceof List) {
-                    List l = (List)e.getValue();
-                    for (int i = 0; i < l.size(); i++) {
-                        Object o = l.get(i);
-                        if (o instanceof Map) {
-                            HashMap he = new HashMap((Map)o);
-                            l.set(i, he);
-                            s.push(he);
-                        }
-                    }
-                }
+    public static ArrayList<ArrayList<String>> batchNames(List<String> names, int batchSize) {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (String name : names) {
+            String n = name.substring(name.lastIndexOf('/') + 1);
+            counts.put(n, counts.containsKey(n) ? counts.get(n) + 1 : 1);
+        }
+        ArrayList<ArrayList<String>> batches = new ArrayList<ArrayList<String>>();
+        ArrayList<String> batch = new ArrayList<String>();
+        for (String name : names) {
+            if (counts.get(name.substring(name.lastIndexOf('/') + 1)) > 1) {
+                batches.add(new ArrayList<String>([name]));
+                continue;
             }
+            batch.add(name);
+            if (batch.size() >= batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<String>();
+            }
+        }
+        if (batch.size() > 0) {
+            batches.add(batch);
         }
-        return master;
+        return batches;
+    }
+
+    /**
+     * The Map produced by JsonSlurper is not serializable. If we return it to the user's DSL script and they store it in a global variable,
+     * the Jenkins CPS engine will attempt to serialize it before the next AsynchronousStepExecution. This leads to a
+     * exceptions like: java.io.NotSerializableException: groovy.json.internal.LazyMap
+     * To avoid this, everything we return to the user must be serializable -- SerializableJson parses straight into HashMaps and ArrayLists.
+     * NonCPS methods may not call non-NonCPS methods and arguments/returns must be serializable.
+     * http://stackoverflow.com/questions/37864542/jenkins-pipeline-notserializableexception-groovy-json-internal-lazymap
+     */
+    @NonCPS
+    public HashMap serializableMap(String json) {
+        return SerializableJson.parseMap(json);
+    }
+
+    /**
+     * Like serializableMap(String), but reads the output of a single action where it was captured, so that
+     * large output is never materialized as one String.
+     */
+    @NonCPS
+    public HashMap serializableMap(Result r, List fields=null) {
+        // only the requested fields are kept; everything else is skipped while parsing
+        SerializableJson.Projection projection = SerializableJson.Projection.of(fields);
+        if (r.actions.size() == 1) {
+            return SerializableJson.parseMap(r.actions.get(0).getCapturedOut(), projection);
+        }
+        // one document per action (e.g. one per project); merge them into a single List model
+        HashMap list = new HashMap();
+        list.put("apiVersion", "v1");
+        list.put("kind", "List");
+        list.put("metadata", new HashMap());
+        ArrayList items = new ArrayList();
+        list.put("items", items);
+        for (OcAction.OcActionResult action : r.actions) {
+            if (action.getCapturedOut().length() == 0) {
+                continue;
+            }
+            items.addAll(unwrapOpenShiftList(SerializableJson.parseMap(action.getCapturedOut(), projection)));
+        }
+        return list;
     }
 
     /**
@@ -676,12 +896,14 @@ class OpenShiftDSL implements Serializable {
                 
         Result r = new Result(verb);
         HashMap<String, String> projectNames = null;
+        ArrayList<String> nameList = null;
         if (consistent) {
             if (namespace == null || namespace.trim().length() == 0)
                 namespace = currentContext.getProject();
             r = innerObjectDefAction(verb, obj, userArgs, namespace, r);
         } else {
-            projectNames = new HashMap<String, String>();
+            // one List per namespace, rather than one invocation per object
+            LinkedHashMap<String, ArrayList> byNamespace = new LinkedHashMap<String, ArrayList>();
             for (int i=0; i < objList.size(); i++) {
                 Object obj2 = objList.get(i);
                 if (obj2 instanceof Map) {
@@ -691,19 +913,36 @@ class OpenShiftDSL implements Serializable {
                         String ns = (String)obj2MapMetadata.get("namespace");
                         if (ns == null || ns.trim().length() == 0)
                             ns = currentContext.getProject();
-                        String kind = obj2Map.get("kind");
-                        abbreviations.containsKey(kind.toLowerCase().trim()) && (kind=abbreviations.get(kind.toLowerCase().trim()))
-                        String name = obj2MapMetadata.get("name");
-                        r = innerObjectDefAction(verb, obj2, userArgs, ns, r);
-                        // add index in case same kind/name in diff projects
-                        projectNames.put(kind.toLowerCase().trim()+"/"+name+i, ns);
+                        if (!byNamespace.containsKey(ns))
+                            byNamespace.put(ns, new ArrayList());
+                        byNamespace.get(ns).add(obj2);
                     }
                 }
             }
+            List<String> namespaces = new ArrayList<String>(byNamespace.keySet());
+            List results = fanOut(defaultParallelism, defaultParallelPolicy, namespaces, { String ns ->
+                return innerObjectDefAction(verb, byNamespace.get(ns), userArgs, ns, new Result(verb));
+            });
+            // oc reports the names of each namespace's objects in its own output; record where each went
+            projectNames = new HashMap<String, String>();
+            nameList = new ArrayList<String>();
+            for (int n=0; n < namespaces.size(); n++) {
+                Result nsResult = (Result)results.get(n);
+                if (nsResult == null)
+                    continue; // not started, see fanOut
+                r.actions.addAll(nsResult.actions);
+                for (String name : OpenShiftDSL.splitNames(nsResult.out)) {
+                    // add index in case same kind/name in diff projects
+                    projectNames.put(name+nameList.size(), namespaces.get(n));
+                    nameList.add(name);
+                }
+            }
         }
         r.failIf(verb + " returned an error");
         OpenShiftResourceSelector selector = null;
-        ArrayList<String> nameList = OpenShiftDSL.splitNames(r.out);
+        if (nameList == null) {
+            nameList = OpenShiftDSL.splitNames(r.out);
+        }
         if (projectNames != null) {
             selector = new OpenShiftResourceSelector(r, nameList, projectNames);
         } else {
@@ -728,26 +967,24 @@ class OpenShiftDSL implements Serializable {
             if (project != null) {
                 stepArgs["project"] = project;
             }
-            r.actions.add((OcAction.OcActionResult)script._OcAction(stepArgs));
+            r.actions.add(ocAction(stepArgs));
         } else if (markup) {
-            FilePath f = currentContext.exec.getWorkspaceFilePath().createTextTempFile(verb, ".markup", s, true);
-            try {
-                Map stepArgs = buildCommonArgs(verb, [ "-f", f.getRemote() ], userArgs, "-o=name");
-                stepArgs["reference"] = [ "${f.getRemote()}": s ];  // Store the markup content for reference in the result
-                if (project != null) {
-                    stepArgs["project"] = project;
-                }
-                r.actions.add((OcAction.OcActionResult)script._OcAction(stepArgs));
-            } finally {
-                f.delete();
+            // the markup is fed to oc over stdin, rather than through a file in the workspace
+            Map stepArgs = buildCommonArgs(verb, [ "-f", "-" ], userArgs, "-o=name");
+            String blob = storeBlob(s);
+            stepArgs["stdinBlob"] = blob;
+            stepArgs["reference"] = [ "-": blob ];  // Refer to the markup content in the result
+            if (project != null) {
+                stepArgs["project"] = project;
             }
+            r.actions.add(ocAction(stepArgs));
         } else {
             // looks like a subVerb was passed in (e.g. openshift.create("serviceaccount", "jenkins"))
             Map stepArgs = buildCommonArgs(verb, [s], userArgs, "-o=name");
             if (project != null) {
                 stepArgs["project"] = project;
             }
-            r.actions.add((OcAction.OcActionResult)script._OcAction(stepArgs));
+            r.actions.add(ocAction(stepArgs));
         }
         
         return r;
@@ -785,23 +1022,63 @@ class OpenShiftDSL implements Serializable {
         Result r = new Result("process")
 
         if (httpref) {
-            r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("process", ["-f", s ], args, "-o=json")));
+            r.actions.add(ocAction(buildCommonArgs("process", ["-f", s ], args, "-o=json")));
             r.failIf("process returned an error");
         } else if (markup) { // does this look like json or yaml?
-            FilePath f = currentContext.exec.getWorkspaceFilePath().createTextTempFile("process", ".markup", s, true);
-            try {
-                r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("process", ["-f", f.getRemote() ], args, "-o=json")));
-                r.failIf("process returned an error");
-            } finally {
-                f.delete();
-            }
+            Map stepArgs = buildCommonArgs("process", ["-f", "-" ], args, "-o=json");
+            stepArgs["stdinBlob"] = storeBlob(s);
+            r.actions.add(ocAction(stepArgs));
+            r.failIf("process returned an error");
         } else {
             // Otherwise, the obj parameter is assumed to be a template name
-            r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("process", [s], args, "-o=json")));
+            r.actions.add(ocAction(buildCommonArgs("process", [s], args, "-o=json")));
             r.failIf("process returned an error");
         }
         // Output should be JSON; unmarshall into a map and transform into a list of objects.
-        return unwrapOpenShiftList(serializableMap(r.out));
+        return unwrapOpenShiftList(serializableMap(r));
+    }
+
+    /**
+     * Equivalent to apply(process(obj, args...)), but the rendered objects are piped from oc process into
+     * oc apply on the agent, so they are neither sent to the controller nor kept in the program state.
+     */
+    public OpenShiftResourceSelector processAndApply(Object obj, Object... oargs) throws AbortException {
+        dieIfWithout(currentContext, ContextId.WITH_CLUSTER, "processAndApply");
+        String[] args = toStringArray(oargs);
+
+        if (obj instanceof Map) {
+            if (obj.kind != "Template") {
+                throw new AbortException("Expected Template object, but received: " + obj.toString());
+            }
+            // https://github.com/openshift/origin/issues/12277
+            Map template = new HashMap((Map)obj);
+            template.metadata.remove('namespace');
+            template.metadata.remove('selfLink');
+            obj = JsonOutput.toJson(template);
+        }
+
+        String s = obj.toString();
+        boolean markup = s.contains("{") || s.contains(":")
+        boolean httpref = s.toLowerCase().startsWith("http")
+
+        Map stepArgs;
+        if (httpref) {
+            stepArgs = buildCommonArgs("process", ["-f", s ], args, "-o=json");
+        } else if (markup) { // does this look like json or yaml?
+            stepArgs = buildCommonArgs("process", ["-f", "-" ], args, "-o=json");
+            stepArgs["stdinBlob"] = storeBlob(s);
+        } else {
+            // Otherwise, the obj parameter is assumed to be a template name
+            stepArgs = buildCommonArgs("process", [s], args, "-o=json");
+        }
+        stepArgs["pipeVerb"] = "apply";
+        stepArgs["pipeVerbArgs"] = ["-f", "-"];
+        stepArgs["pipeOptions"] = ["-o=name"];
+
+        Result r = new Result("processAndApply");
+        r.actions.add(ocAction(stepArgs));
+        r.failIf("processAndApply returned an error");
+        return new OpenShiftResourceSelector(r, OpenShiftDSL.splitNames(r.out));
     }
 
     public Result patch(Object obj, Object opatch, Object... oargs) throws AbortException {
@@ -818,19 +1095,16 @@ class OpenShiftDSL implements Serializable {
         Result r = new Result("patch")
 
         if (httpref) {
-            r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("patch", ["-f", s, "-p", patch ], args)));
+            r.actions.add(ocAction(buildCommonArgs("patch", ["-f", s, "-p", patch ], args)));
             r.failIf("patch returned an error");
         } else if (markup) { // does this look like json or yaml?
-            FilePath f = currentContext.exec.getWorkspaceFilePath().createTextTempFile("patch", ".markup", s, true);
-            try {
-                r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("patch", ["-f", f.getRemote(), "-p", patch ], args)));
-                r.failIf("patch returned an error");
-            } finally {
-                f.delete();
-            }
+            Map stepArgs = buildCommonArgs("patch", ["-f", "-", "-p", patch ], args);
+            stepArgs["stdinBlob"] = storeBlob(s);
+            r.actions.add(ocAction(stepArgs));
+            r.failIf("patch returned an error");
         } else {
             // Otherwise, the obj parameter is assumed to be a template name
-            r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("patch", [s, "-p", patch], args)));
+            r.actions.add(ocAction(buildCommonArgs("patch", [s, "-p", patch], args)));
             r.failIf("patch returned an error");
         }
         return r;
@@ -840,7 +1114,7 @@ class OpenShiftDSL implements Serializable {
         String name = toSingleString(oname);
         String[] args = toStringArray(oargs);
         Result r = new Result("newProject");
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs(false, "new-project", [name], args, "--skip-config-write")));
+        r.actions.add(ocAction(buildCommonArgs(false, "new-project", [name], args, "--skip-config-write")));
         r.failIf("new-project returned an error");
         return r;
     }
@@ -915,7 +1189,7 @@ class OpenShiftDSL implements Serializable {
         String[] args = toStringArray(oargs);
 		List<String> argsList = toStringList(oargs);
         Result r = new Result("raw");
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("", argsList, null)));
+        r.actions.add(ocAction(buildCommonArgs("", argsList, null)));
         r.failIf("raw command " + args + " returned an error");
         return r;
     }
@@ -930,7 +1204,7 @@ class OpenShiftDSL implements Serializable {
     public Result set(Object... oargs) {
         String[] args = toStringArray(oargs);
         Result r = new Result("set");
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("set", null, args)));
+        r.actions.add(ocAction(buildCommonArgs("set", null, args)));
         r.failIf("set returned an error");
         return r;
     }
@@ -942,9 +1216,9 @@ class OpenShiftDSL implements Serializable {
         // 
         // so we re-run with create on the returned json to effect the actual creation
         Result r = new Result("newApp");
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("new-app", null, args, "-o=json")));
+        r.actions.add(ocAction(buildCommonArgs("new-app", null, args, "-o=json")));
         r.failIf("new-app" + " returned an error");
-        ArrayList<HashMap> result = unwrapOpenShiftList(serializableMap(r.out));
+        ArrayList<HashMap> result = unwrapOpenShiftList(serializableMap(r));
         return objectDefAction("create", result, new Object[0]);
     }
 
@@ -952,7 +1226,7 @@ class OpenShiftDSL implements Serializable {
     private OpenShiftResourceSelector newObjectsAction(String operation, String verb, Object[] oargs) {
         String[] args = toStringArray(oargs);
         Result r = new Result(operation);
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs(verb, null, args, "-o=name")));
+        r.actions.add(ocAction(buildCommonArgs(verb, null, args, "-o=name")));
         r.failIf(verb + " returned an error");
         OpenShiftResourceSelector selector = new OpenShiftResourceSelector(r, OpenShiftDSL.splitNames(r.out));
         return selector;
@@ -1025,7 +1299,7 @@ class OpenShiftDSL implements Serializable {
     private Result simplePassthrough(String verb, Object[] oargs) {
         String[] args = toStringArray(oargs);
         Result r = new Result(verb);
-        r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs(verb, null, args, null)));
+        r.actions.add(ocAction(buildCommonArgs(verb, null, args, null)));
         r.failIf(verb + " returned an error");
         return r;
     }
@@ -1143,13 +1417,33 @@ class OpenShiftDSL implements Serializable {
     }
 
     public class Capabilities implements Serializable {
+        // the only field of Capabilities saved by earlier versions of the plugin; oc is null when restoring those
         private boolean ignoreNotFound;
+        private final OcCapabilities oc;
+
+        public Capabilities(OcCapabilities oc) {
+            this.oc = oc;
+            this.ignoreNotFound = oc != null && oc.hasIgnoreNotFound();
+        }
 
-        public Capabilities() {
+        public boolean isProbed() {
+            return oc != null;
         }
 
         public boolean hasIgnoredNotFound() {
-            return ignoreNotFound;
+            return oc == null ? ignoreNotFound : oc.hasIgnoreNotFound();
+        }
+
+        public String getClientVersion() {
+            return oc == null ? null : oc.getClientVersion();
+        }
+
+        public boolean supportsFlag(String verb, String flag) {
+            return oc != null && oc.supportsFlag(verb, flag);
+        }
+
+        public String toString() {
+            return oc == null ? "Capabilities[ignoreNotFound=" + ignoreNotFound + "]" : oc.toString();
         }
 
     }
@@ -1161,6 +1455,8 @@ class OpenShiftDSL implements Serializable {
         private ArrayList<String> objectList;
         private HashMap<String, String> projectList;
         private String invalidMessage;
+        private int parallelism = 0; // 0 uses openshift.parallelism
+        private String parallelPolicy = null;
 
         public OpenShiftResourceSelector(String highLevelOperation, Object okind_or_list, Object qualifier) {
             super(highLevelOperation);
@@ -1245,21 +1541,27 @@ class OpenShiftDSL implements Serializable {
                 args.add(kind);
 
                 if (labels != null) {
-                    def labelBuilder = ""
-                    Iterator<Map.Entry> i = labels.entrySet().iterator();
-                    while (i.hasNext()) {
-                        Map.Entry e = i.next();
-                        // TODO: handle quotes, newlines, etc?
-                        labelBuilder <<= sprintf("%s=%s,", e.getKey(),e.getValue());
-                    }
-                    labelBuilder = labelBuilder.substring(0, labelBuilder.length() - 1)
-                    args.add('-l ' + labelBuilder)
+                    args.add('-l ' + labelSelector())
                 }
             }
             
             return args;
         }
 
+        private String labelSelector() {
+            if (labels == null) {
+                return null;
+            }
+            def labelBuilder = ""
+            Iterator<Map.Entry> i = labels.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry e = i.next();
+                // TODO: handle quotes, newlines, etc?
+                labelBuilder <<= sprintf("%s=%s,", e.getKey(),e.getValue());
+            }
+            return labelBuilder.substring(0, labelBuilder.length() - 1)
+        }
+
         @NonCPS
         private ArrayList<String> flattenMap(Map pairs) {
             ArrayList<String> args = new ArrayList<>();
@@ -1289,7 +1591,7 @@ class OpenShiftDSL implements Serializable {
             }
 
             r.actions.add(
-                    (OcAction.OcActionResult)script._OcAction(buildCommonArgs("delete", selectionArgs, userArgs))
+                    ocAction(buildCommonArgs("delete", selectionArgs, userArgs))
             );
             r.failIf("Error during delete");
             return r;
@@ -1319,7 +1621,7 @@ class OpenShiftDSL implements Serializable {
             }
 
             r.actions.add(
-                    (OcAction.OcActionResult)script._OcAction(buildCommonArgs(action, verbArgs, userArgs))
+                    ocAction(buildCommonArgs(action, verbArgs, userArgs))
             );
             r.failIf("Error during " + action);
             return r;
@@ -1348,7 +1650,7 @@ class OpenShiftDSL implements Serializable {
             Map args = buildCommonArgs("describe", selectionArgs(), userArgs);
             args.put("streamStdOutToConsolePrefix", "describe");
             r.actions.add(
-                    (OcAction.OcActionResult)script._OcAction(args)
+                    ocAction(args)
             );
             r.failIf("Error during describe");
             return r;
@@ -1366,17 +1668,32 @@ class OpenShiftDSL implements Serializable {
             /*
             `--watch-only` is not used to ensure the watch closure is called at least once
              */
-            script._OcWatch(buildCommonArgs("get", selectionArgs(), null, "-w", "-o=name")) {
+            // the watched kind and name or labels let _OcWatch resume from the last change it saw rather than list everything again
+            Map watchArgs = buildCommonArgs("get", selectionArgs(), null, "-w", "-o=name");
+            if (objectList != null) {
+                String qualified = objectList.get(0);
+                int slash = qualified.indexOf('/');
+                if (slash > 0) {
+                    watchArgs.put("watchKind", qualified.substring(0, slash));
+                    watchArgs.put("watchName", qualified.substring(slash + 1));
+                }
+            } else {
+                watchArgs.put("watchKind", kind);
+                watchArgs.put("watchLabels", labelSelector());
+            }
+            script._OcWatch(watchArgs) {
+                // something changed; queries made by the body must see it
+                readCacheInvalidate((String)watchArgs.server);
                 body.call(this);
             }
         }
 
-        public boolean exists() throws AbortException {
+        public boolean exists(Map mode=null) throws AbortException {
             if (objectList != null) {
                 // If object names are explicitly given, make sure they *all* exists
-                return objectList.size() > 0 && count() == objectList.size()
+                return objectList.size() > 0 && count(mode) == objectList.size()
             }
-            return count() > 0
+            return count(mode) > 0
         }
 
         public void untilEach(int min=1, Closure<?> body) {
@@ -1388,7 +1705,7 @@ class OpenShiftDSL implements Serializable {
              */
             watch {
                 while (true) {
-                    if (it.count() < min) {
+                    if (it.count([cached: false]) < min) {
                         try {
                             // Pipeline timeouts are the correct way to abort this loop 
                             // for taking too long
@@ -1419,36 +1736,99 @@ class OpenShiftDSL implements Serializable {
         }
 
         private String _asMarkup(String markupType, Map mode=null) throws AbortException {
+            Result result = _markupResult(markupType, mode);
+            if (result == null) {
+                return "";
+            }
+            if (result.actions.size() == 1) {
+                return result.actions.get(0).out;
+            }
+            // several projects were queried; present them as a single document
+            if (markupType == "json") {
+                HashMap merged = objectList == null ? serializableMap(result) : _mergeInSelectionOrder(result, null, _objectProjects());
+                return JsonOutput.prettyPrint(JsonOutput.toJson(merged));
+            }
+            return _joinYaml(result);
+        }
+
+        @NonCPS
+        private String _joinYaml(Result result) {
+            StringBuilder sb = new StringBuilder();
+            for (OcAction.OcActionResult o : result.actions) {
+                String s = o.out;
+                if (s == null || s.trim().isEmpty()) {
+                    continue;
+                }
+                if (sb.length() > 0) {
+                    sb.append("---\n");
+                }
+                sb.append(s);
+                if (!s.endsWith("\n")) {
+                    sb.append('\n');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Retrieves the markup of the selected objects, or returns null if the receiver is statically empty.
+         */
+        private Result _markupResult(String markupType, Map mode=null) throws AbortException {
             boolean exportable = false;
             if (mode != null) {
                 exportable = (new Boolean(mode.get("exportable", new Boolean(false)))).booleanValue();
             }
 
             if (_isEmptyStatic()) {
-                return "";
+                return null;
             }
             
             String verb = exportable?"export":"get"
+            Result result = new Result(verb);
             if (projectList == null || projectList.size() == 0) {
-                OcAction.OcActionResult r = (OcAction.OcActionResult)script._OcAction(buildCommonArgs(verb, selectionArgs(), null, "-o="+markupType ));
+                OcAction.OcActionResult r = ocAction(buildCommonArgs(verb, selectionArgs(), null, "-o="+markupType ));
                 r.failIf("Unable to retrieve object markup with " + verb);
-                return r.out;
+                result.actions.add(r);
+                return result;
             }
             if (objectList == null) {
                 Map stepArgs = buildCommonArgs(verb, selectionArgs(), null, "-o="+markupType );
                 stepArgs["project"] = currentContext.getProject();
-                OcAction.OcActionResult r = (OcAction.OcActionResult)script._OcAction(stepArgs);
+                OcAction.OcActionResult r = ocAction(stepArgs);
                 r.failIf("Unable to retrieve object markup with " + verb);
-                return r.out;
+                result.actions.add(r);
+                return result;
             }
             if (invalidMessage != null && invalidMessage.length() > 0) {
                 throw new AbortException(invalidMessage);
             }
-            Result result = new Result(verb);
+            // one `oc get a b c -n project` per project rather than one per object; projects are visited in the
+            // order they first appear in, which _mergeInSelectionOrder relies on
+            List<String> objectProjects = _objectProjects();
+            LinkedHashMap<String, ArrayList<String>> byProject = new LinkedHashMap<String, ArrayList<String>>();
+            for (int i=0; i < objectList.size(); i++) {
+                String project = objectProjects.get(i);
+                if (!byProject.containsKey(project))
+                    byProject.put(project, new ArrayList<String>());
+                byProject.get(project).add(objectList.get(i));
+            }
+            List<String> projects = new ArrayList<String>(byProject.keySet());
+            List outcomes = forEachName(projects, { String project ->
+                Map stepArgs = buildCommonArgs(verb, byProject.get(project), null, "-o="+markupType );
+                stepArgs["project"] = project;
+                return ocAction(stepArgs);
+            });
+            addActions(result, outcomes);
+            result.failIf("Unable to retrieve object markup with " + verb);
+            return result;
+        }
+
+        /**
+         * @return the project of each entry of objectList
+         */
+        private ArrayList<String> _objectProjects() {
+            ArrayList<String> projects = new ArrayList<String>(objectList.size());
             for (int i=0; i < objectList.size(); i++) {
-                ArrayList<String> verbArgs = new ArrayList<String>(1);
-                verbArgs.add(objectList.get(i));
-                Map stepArgs = buildCommonArgs(verb, verbArgs, null, "-o="+markupType );
                 String project = null;
                 if (projectList != null) {
                     // add index in case same kind/name in diff projects
@@ -1456,12 +1836,60 @@ class OpenShiftDSL implements Serializable {
                 }
                 if (project == null)
                     project = currentContext.getProject();
-                stepArgs["project"] = project;
-                OcAction.OcActionResult r = (OcAction.OcActionResult)script._OcAction(stepArgs);
-                r.failIf("Unable to retrieve object markup with " + verb);
-                result.actions.add(r);
+                projects.add(project);
+            }
+            return projects;
+        }
+
+        /**
+         * Merges the output of the per-project actions of _markupResult into a single List model whose items
+         * follow objectList, i.e. the order of names(), rather than being grouped by project.
+         * @param objectProjects the project of each entry of objectList, see _objectProjects
+         */
+        @NonCPS
+        private HashMap _mergeInSelectionOrder(Result r, List fields, List<String> objectProjects) {
+            List<String> projects = new ArrayList<String>(new LinkedHashSet<String>(objectProjects));
+            if (r.actions.size() < 2 || projects.size() != r.actions.size()) {
+                return serializableMap(r, fields);
+            }
+            SerializableJson.Projection projection = SerializableJson.Projection.of(fields);
+            HashMap<String, List<HashMap>> remaining = new HashMap<String, List<HashMap>>();
+            for (int i = 0; i < projects.size(); i++) {
+                OcAction.OcActionResult action = r.actions.get(i);
+                List<HashMap> items = action.getCapturedOut().length() == 0 ? new ArrayList<HashMap>() :
+                        unwrapOpenShiftList(SerializableJson.parseMap(action.getCapturedOut(), projection));
+                remaining.put(projects.get(i), new LinkedList<HashMap>(items));
+            }
+            ArrayList items = new ArrayList();
+            for (int i = 0; i < objectList.size(); i++) {
+                List<HashMap> candidates = remaining.get(objectProjects.get(i));
+                if (candidates.isEmpty()) {
+                    continue;
+                }
+                // oc returns the objects in the order they were asked for, but look the name up to be sure
+                String entry = objectList.get(i);
+                String name = entry.substring(entry.lastIndexOf('/') + 1);
+                HashMap match = candidates.get(0);
+                for (HashMap item : candidates) {
+                    Object metadata = item.get("metadata");
+                    if (metadata instanceof Map && name == ((Map) metadata).get("name")) {
+                        match = item;
+                        break;
+                    }
+                }
+                candidates.remove(match);
+                items.add(match);
             }
-            return result.getOut();
+            // anything oc returned beyond the selected objects is kept, after them
+            for (String project : projects) {
+                items.addAll(remaining.get(project));
+            }
+            HashMap list = new HashMap();
+            list.put("apiVersion", "v1");
+            list.put("kind", "List");
+            list.put("metadata", new HashMap());
+            list.put("items", items);
+            return list;
         }
 
         public String asJson(Map mode=null) throws AbortException {
@@ -1478,10 +1906,19 @@ class OpenShiftDSL implements Serializable {
          * an OpenShift List with zero items will be returned.
          */
         private HashMap _asSingleMap(Map mode=null) throws AbortException {
-            if (_isEmptyStatic()) {
+            Result result = _markupResult("json", mode);
+            if (result == null) {
                 return _emptyListModel();
             }
-            return serializableMap(asJson(mode));
+            List fields = null;
+            if (mode != null && mode.get("fields") != null) {
+                Object f = mode.get("fields");
+                fields = (f instanceof List) ? (List) f : [f.toString()];
+            }
+            if (result.actions.size() > 1 && objectList != null) {
+                return _mergeInSelectionOrder(result, fields, _objectProjects());
+            }
+            return serializableMap(result, fields);
         }
 
         public ArrayList<Map> objects(Map mode=null) throws AbortException {
@@ -1489,8 +1926,8 @@ class OpenShiftDSL implements Serializable {
             return unwrapOpenShiftList(m);
         }
 
-        public int count() throws AbortException {
-            return queryNames().size();
+        public int count(Map mode=null) throws AbortException {
+            return queryNames(mode).size();
         }
         
         public HashMap<String, String> projects() {
@@ -1515,37 +1952,55 @@ class OpenShiftDSL implements Serializable {
             return m;
         }
 
-        private ArrayList<String> queryNames() throws AbortException {            
+        /**
+         * @param mode [cached: false] bypasses the read cache; the fresh result still replaces the cached one
+         */
+        private ArrayList<String> queryNames(Map mode=null) throws AbortException {
             if (_isEmptyStatic()) {
                 return new ArrayList<String>(0);
             }
+            boolean cached = true;
+            if (mode != null) {
+                cached = (new Boolean(mode.get("cached", new Boolean(true)))).booleanValue();
+            }
 
             // Otherwise, we need to ask the API server what presently matches
-            OcAction.OcActionResult r = null;
-            if (script.openshift.getCapabilities().hasIgnoredNotFound()) {
-                r = (OcAction.OcActionResult)script._OcAction(buildCommonArgs("get", selectionArgs(), null, "-o=name", "--ignore-not-found"));
-                r.failIf("Unable to retrieve object names: " + this.toString());
+            boolean ignoreNotFound = script.openshift.getCapabilities().hasIgnoredNotFound();
+            Map args;
+            if (ignoreNotFound) {
+                args = buildCommonArgs("get", selectionArgs(), null, "-o=name", "--ignore-not-found");
             } else {
-                r = (OcAction.OcActionResult)script._OcAction(buildCommonArgs("get", selectionArgs(), null, "-o=name"));
-                if (r.status != 0 && (r.err.contains("(NotFound)") || r.out.contains("(NotFound)"))) {
-                    return new ArrayList<String>();
-                } else {
-                    r.failIf("Unable to retrieve object names: " + this.toString());
+                args = buildCommonArgs("get", selectionArgs(), null, "-o=name");
+            }
+            String cacheKey = readCacheKey(args);
+            if (cached) {
+                ArrayList<String> hit = readCacheGet((String)args.server, cacheKey);
+                if (hit != null) {
+                    return hit;
                 }
             }
 
-            return OpenShiftDSL.splitNames(r.out);
+            OcAction.OcActionResult r = ocAction(args);
+            ArrayList<String> names;
+            if (!ignoreNotFound && r.status != 0 && (r.err.contains("(NotFound)") || r.out.contains("(NotFound)"))) {
+                names = new ArrayList<String>();
+            } else {
+                r.failIf("Unable to retrieve object names: " + this.toString());
+                names = OpenShiftDSL.splitNames(r.out);
+            }
+            readCachePut((String)args.server, cacheKey, names);
+            return names;
         }
 
-        public ArrayList<String> names() throws AbortException {
+        public ArrayList<String> names(Map mode=null) throws AbortException {
             if (objectList != null) {
                 return objectList;
             }
-            return queryNames();
+            return queryNames(mode);
         }
 
-        public String name() throws AbortException {
-            ArrayList<String> names = names();
+        public String name(Map mode=null) throws AbortException {
+            ArrayList<String> names = names(mode);
             if (names.size() == 0) {
                 throw new AbortException("Expected single name, but found selection empty");
             }
@@ -1555,19 +2010,49 @@ class OpenShiftDSL implements Serializable {
             return names.get(0);
         }
 
+        /**
+         * Runs subsequent per-object operations of this selector (onceForEach verbs, patch, logs, startBuild
+         * and rollout operations) up to n at a time. Actions are still reported in the order of the selected
+         * objects. These operations only read currentContext, which all branches share; withEach bodies, which
+         * may change it, always run one after another.
+         * @param policy collectAll (the default) runs every object; failFast stops starting new objects once one
+         *          has failed
+         */
+        public OpenShiftResourceSelector withParallelism(int n, String policy=null) {
+            checkParallelPolicy(policy);
+            this.@parallelism = n;
+            this.@parallelPolicy = policy;
+            return this;
+        }
+
+        private List forEachName(List items, Closure body) {
+            int n = (parallelism > 0) ? parallelism : defaultParallelism;
+            String policy = (parallelPolicy != null) ? parallelPolicy : defaultParallelPolicy;
+            return fanOut(n, policy, items, body);
+        }
+
+        @NonCPS
+        private void addActions(Result r, List outcomes) {
+            for (Object o : outcomes) {
+                if (o instanceof List) {
+                    r.actions.addAll((List)o);
+                } else if (o != null) {
+                    r.actions.add((OcAction.OcActionResult)o);
+                }
+            }
+        }
+
         public Result logs(Object... ouserArgs) throws AbortException {
             String[] userArgs = toStringArray(ouserArgs);
 
             Result r = new Result("logs");
             List<String> names = names();
             // oc logs only supports a single object at a time, so get individual names
-            for (String name : names) {
+            addActions(r, forEachName(names, { String name ->
                 Map args = buildCommonArgs("logs", [ name ], userArgs);
                 args.put("streamStdOutToConsolePrefix", "logs:"+name);
-                r.actions.add(
-                        (OcAction.OcActionResult)script._OcAction(args)
-                );
-            }
+                return ocAction(args);
+            }));
             r.failIf("Error running logs on at least one item: " + names.toString());
             return r;
         }
@@ -1580,15 +2065,13 @@ class OpenShiftDSL implements Serializable {
             Result r = new Result("startBuild");
             List<String> names = names();
             // only supports a single object at a time, so get individual names
-            for (String name : names) {
+            addActions(r, forEachName(names, { String name ->
                 Map args = buildCommonArgs("start-build", [name.toString() ], userArgs, "-o=name")
                 if (realTimeLogs) {
                     args.put("streamStdOutToConsolePrefix", "start-build:"+name);
                 }
-                r.actions.add(
-                        (OcAction.OcActionResult)script._OcAction(args)
-                );
-            }
+                return ocAction(args);
+            }));
             r.failIf("Error running start-build on at least one item: " + names.toString());
             ArrayList<String> resultOutput = new ArrayList<String>();
             if (!realTimeLogs) {
@@ -1607,15 +2090,69 @@ class OpenShiftDSL implements Serializable {
 
             Result r = new Result(operation);
             List<String> names = names();
-            for (String name : names) {
-                r.actions.add(
-                        (OcAction.OcActionResult)script._OcAction(buildCommonArgs(verb, [name.toString()], userArgs))
-                );
+            if (BATCHED_VERBS.contains(verb)) {
+                batchForEach(r, verb, names, [], userArgs);
+            } else {
+                addActions(r, forEachName(names, { String name ->
+                    return ocAction(buildCommonArgs(verb, [name.toString()], userArgs));
+                }));
             }
             r.failIf("Error running " + verb + " on at least one item: " + names.toString());
             return r;
         }
 
+        /**
+         * Runs a verb which accepts several objects once per batch of names instead of once per name, and
+         * splits each invocation's output back into one OcActionResult per object. Objects oc did not report
+         * on are retried individually.
+         */
+        private void batchForEach(Result r, String verb, List<String> names, List verbArgs, String[] userArgs) {
+            int batchSize = EnvSettings.getInt("OPENSHIFT_CLIENT_PLUGIN_BATCH_SIZE", 50);
+            List batches = OpenShiftDSL.batchNames(names, batchSize > 0 ? batchSize : 1);
+            addActions(r, forEachName(batches, { List<String> batch ->
+                return runBatch(verb, batch, verbArgs, userArgs);
+            }));
+        }
+
+        private List<OcAction.OcActionResult> runBatch(String verb, List<String> batch, List verbArgs, String[] userArgs) {
+            List args = new ArrayList(batch);
+            args.addAll(verbArgs);
+            OcAction.OcActionResult combined = ocAction(buildCommonArgs(verb, args, userArgs));
+            if (batch.size() == 1) {
+                return [combined];
+            }
+            List<OcAction.OcActionResult> split = combined.splitByObject(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                if (split.get(i) != null) {
+                    continue;
+                }
+                // oc did not report on the object. A patch (e.g. a json add) or a volume change the batch already
+                // applied would be applied twice if run again, so only idempotent verbs are retried on their own
+                if (IDEMPOTENT_BATCHED_VERBS.contains(verb)) {
+                    List single = [batch.get(i)];
+                    single.addAll(verbArgs);
+                    split.set(i, ocAction(buildCommonArgs(verb, single, userArgs)));
+                } else {
+                    split.set(i, unreportedResult(combined));
+                }
+            }
+            return split;
+        }
+
+        @NonCPS
+        private OcAction.OcActionResult unreportedResult(OcAction.OcActionResult combined) {
+            // the batch failed without saying whether it changed the object; report it failed with the batch's output
+            OcAction.OcActionResult r = new OcAction.OcActionResult();
+            r.verb = combined.verb;
+            r.cmd = combined.cmd;
+            r.status = combined.status;
+            r.reference = combined.reference;
+            r.verbose = combined.verbose;
+            r.setOut(combined.getOut());
+            r.setErr(combined.getErr());
+            return r;
+        }
+
         public Result cancelBuild(Object... userArgs) throws AbortException {
             return onceForEach("cancelBuild", "cancel-build", userArgs);
         }
@@ -1646,14 +2183,14 @@ class OpenShiftDSL implements Serializable {
 
             Result r = new Result("patch")
             List<String> names = names();
-            for (String name : names) {
-                r.actions.add((OcAction.OcActionResult)script._OcAction(buildCommonArgs("patch", [name, "-p", patch], userArgs)));
-            }
+            batchForEach(r, "patch", names, ["-p", patch], userArgs);
             r.failIf("Error running patch on at least one item: " + names.toString());
             return r;
         }
 
         public <V> V withEach(Closure<V> body) {
+            // bodies run one after another, whatever the parallelism: a body may enter withProject, withCluster or
+            // withCredentials, which change currentContext for every branch running at the time
             List<String> names = names();
             for (int i=0; i < names.size(); i++) {
                 String name = names.get(i);
@@ -1758,7 +2295,7 @@ class OpenShiftDSL implements Serializable {
         }
 
 
-        public OpenShiftResourceSelector related(Object okind) throws AbortException {
+        public OpenShiftResourceSelector related(Object okind, Map mode=null) throws AbortException {
             String kind = okind.toString(); // convert gstring to string if necessary
             kind = kind.toLowerCase().trim();
 
@@ -1768,7 +2305,7 @@ class OpenShiftDSL implements Serializable {
             HashMap<String,String> labels = new HashMap<String,String>();
             ArrayList<String> newList = new ArrayList<String>();
 
-            String[] split = name().split("/");
+            String[] split = name(mode).split("/");
             String k = split[0];
             String unqualifiedName = split[1];
             abbreviations.containsKey(k) && (k=abbreviations.get(k));
@@ -1812,13 +2349,12 @@ class OpenShiftDSL implements Serializable {
         private Result runSubVerb(String subVerb, Object[] oargs, boolean streamToStdout=false) throws AbortException {
             String [] args = toStringArray(oargs);
             Result r = new Result("rollout:" + subVerb);
-            selector.withEach {
-                String dcName = it.name();
+            selector.addActions(r, selector.forEachName(selector.names(), { String dcName ->
                 List verbArgs = [ subVerb, dcName ];
                 Map stepArgs = buildCommonArgs("rollout", verbArgs, args, null);
                 stepArgs.streamStdOutToConsolePrefix = "rollout:" + subVerb + ":" + dcName;
-                r.actions.add((OcAction.OcActionResult)script._OcAction(stepArgs));
-            }
+                return ocAction(stepArgs);
+            }));
             r.failIf(r.highLevelOperation + " returned an error");
             return r;
         }
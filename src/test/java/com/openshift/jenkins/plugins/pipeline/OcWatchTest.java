@@ -0,0 +1,35 @@
+package com.openshift.jenkins.plugins.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class OcWatchTest {
+
+    @Test
+    public void resumesKnownKindsAtTheirCollection() {
+        assertEquals("/api/v1/namespaces/p/pods", OcWatch.resumePath("pods", "p", null, null));
+        assertEquals("/apis/apps.openshift.io/v1/namespaces/p/deploymentconfigs", OcWatch.resumePath("dc", "p", null, null));
+        assertEquals("/apis/build.openshift.io/v1/namespaces/p/builds", OcWatch.resumePath("Build", "p", null, null));
+    }
+
+    @Test
+    public void encodesSelectors() {
+        assertEquals("/api/v1/namespaces/p/pods?fieldSelector=metadata.name%3Dfrontend-1",
+                OcWatch.resumePath("pod", "p", "frontend-1", null));
+        assertEquals("/api/v1/namespaces/p/pods?labelSelector=app%3Dweb%2Ctier+in+%28a%2Cb%29",
+                OcWatch.resumePath("pod", "p", null, "app=web,tier in (a,b)"));
+        assertEquals("/api/v1/namespaces/p/pods?fieldSelector=metadata.name%3Dx&labelSelector=app%3Dweb",
+                OcWatch.resumePath("pod", "p", "x", "app=web"));
+    }
+
+    @Test
+    public void cannotResumeWithoutAKnownKindOrProject() {
+        // a namespaced kind without a project would watch the whole cluster
+        assertNull(OcWatch.resumePath("pods", null, null, null));
+        assertEquals("/api/v1/namespaces", OcWatch.resumePath("namespaces", null, null, null));
+        assertNull(OcWatch.resumePath("widgets.example.com", "p", null, null));
+        assertNull(OcWatch.resumePath(null, "p", "x", null));
+    }
+}
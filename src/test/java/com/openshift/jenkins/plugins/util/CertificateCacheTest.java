@@ -0,0 +1,190 @@
+package com.openshift.jenkins.plugins.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CertificateCacheTest {
+
+    private static final long NOW = 100 * CertificateCache.MIN_IDLE_MILLIS;
+
+    private Path tmpdir;
+
+    @BeforeEach
+    public void createTmpdir() throws IOException {
+        tmpdir = Files.createTempDirectory("certificate-cache-test");
+    }
+
+    @AfterEach
+    public void deleteTmpdir() throws IOException {
+        try (Stream<Path> paths = Files.walk(tmpdir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String ca(int i) {
+        return "-----BEGIN CERTIFICATE-----\nca" + i + "\n-----END CERTIFICATE-----\n";
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private Path directory() {
+        return tmpdir.resolve("openshift-client-plugin-ca");
+    }
+
+    private int count() throws IOException {
+        int n = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory(), "*.crt")) {
+            for (Path p : stream) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void storesACertificateAuthorityOnceForItsOwner() throws IOException {
+        Path file = CertificateCache.store(tmpdir, ca(0), NOW);
+        assertEquals(directory(), file.getParent());
+        assertEquals(ca(0), read(file));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory())));
+
+        assertEquals(file, CertificateCache.store(tmpdir, ca(0), NOW + 1));
+        assertEquals(NOW + 1, Files.getLastModifiedTime(file).toMillis(), "reuse marks the file as used");
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void rewritesATamperedFile() throws IOException {
+        Path file = CertificateCache.store(tmpdir, ca(0), NOW);
+        // same size, other content
+        Files.write(file, ca(1).getBytes(StandardCharsets.UTF_8));
+        assertEquals(file, CertificateCache.store(tmpdir, ca(0), NOW));
+        assertEquals(ca(0), read(file));
+
+        Files.write(file, "x".getBytes(StandardCharsets.UTF_8));
+        CertificateCache.store(tmpdir, ca(0), NOW);
+        assertEquals(ca(0), read(file));
+    }
+
+    @Test
+    public void replacesASymbolicLinkInsteadOfFollowingIt() throws IOException {
+        Path file = CertificateCache.store(tmpdir, ca(0), NOW);
+        Path target = Files.write(tmpdir.resolve("target"), ca(0).getBytes(StandardCharsets.UTF_8));
+        Files.delete(file);
+        Files.createSymbolicLink(file, target);
+
+        // even a link to the right content is replaced, since whoever controls the target could change it
+        assertEquals(file, CertificateCache.store(tmpdir, ca(0), NOW));
+        assertTrue(Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS));
+        assertEquals(ca(0), read(file));
+        assertEquals(ca(0), read(target));
+
+        Files.delete(file);
+        Files.write(target, ca(1).getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(file, target);
+        CertificateCache.store(tmpdir, ca(0), NOW);
+        assertEquals(ca(0), read(file));
+        assertEquals(ca(1), read(target), "the target of the link must be left alone");
+    }
+
+    @Test
+    public void refusesADirectoryWhichIsASymbolicLink() throws IOException {
+        Path elsewhere = Files.createDirectory(tmpdir.resolve("elsewhere"));
+        Files.createSymbolicLink(directory(), elsewhere);
+        IOException e = assertThrows(IOException.class, () -> CertificateCache.store(tmpdir, ca(0), NOW));
+        assertTrue(e.getMessage().contains("not a directory"), e.getMessage());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(elsewhere)) {
+            assertFalse(stream.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void refusesAFileInPlaceOfTheDirectory() throws IOException {
+        Files.write(directory(), new byte[0]);
+        assertThrows(IOException.class, () -> CertificateCache.store(tmpdir, ca(0), NOW));
+    }
+
+    @Test
+    public void refusesADirectoryOwnedByAnotherUser() throws IOException {
+        Files.createDirectory(directory());
+        UserPrincipal nobody;
+        try {
+            nobody = tmpdir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName("nobody");
+            Files.setOwner(directory(), nobody);
+        } catch (IOException e) {
+            // no such user, or not running as root, which alone may give a file away
+            nobody = null;
+        }
+        assumeTrue(nobody != null && Files.getOwner(directory()).equals(nobody), "cannot create a directory of another user");
+        IOException e = assertThrows(IOException.class, () -> CertificateCache.store(tmpdir, ca(0), NOW));
+        assertTrue(e.getMessage().contains("owned by"), e.getMessage());
+    }
+
+    @Test
+    public void tightensThePermissionsOfTheDirectory() throws IOException {
+        Files.createDirectory(directory());
+        Files.setPosixFilePermissions(directory(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        CertificateCache.store(tmpdir, ca(0), NOW);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory())));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedIdleFiles() throws IOException {
+        Path[] old = new Path[3];
+        for (int i = 0; i < old.length; i++) {
+            old[i] = CertificateCache.store(tmpdir, ca(i), i);
+        }
+        for (int i = old.length; i < CertificateCache.MAX_ENTRIES + 2; i++) {
+            CertificateCache.store(tmpdir, ca(i), NOW);
+        }
+        assertFalse(Files.exists(old[0]));
+        assertFalse(Files.exists(old[1]));
+        assertTrue(Files.exists(old[2]));
+        assertEquals(CertificateCache.MAX_ENTRIES, count());
+    }
+
+    @Test
+    public void keepsFilesUsedRecently() throws IOException {
+        Path first = CertificateCache.store(tmpdir, ca(0), 0);
+        long idle = CertificateCache.MIN_IDLE_MILLIS;
+        for (int i = 1; i < CertificateCache.MAX_ENTRIES + 5; i++) {
+            CertificateCache.store(tmpdir, ca(i), NOW - idle + i);
+        }
+        // the first file is idle and goes; the others were all used within the last hour, so the cache overflows
+        assertFalse(Files.exists(first));
+        assertEquals(CertificateCache.MAX_ENTRIES + 4, count());
+    }
+
+    @Test
+    public void usingAFileKeepsItFromEviction() throws IOException {
+        Path first = CertificateCache.store(tmpdir, ca(0), 0);
+        Path second = CertificateCache.store(tmpdir, ca(1), 1);
+        // a long running build uses the first CA again
+        CertificateCache.store(tmpdir, ca(0), NOW);
+        for (int i = 2; i < CertificateCache.MAX_ENTRIES + 1; i++) {
+            CertificateCache.store(tmpdir, ca(i), NOW);
+        }
+        assertTrue(Files.exists(first));
+        assertFalse(Files.exists(second));
+    }
+}
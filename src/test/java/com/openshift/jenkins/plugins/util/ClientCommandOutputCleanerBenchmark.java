@@ -0,0 +1,80 @@
+package com.openshift.jenkins.plugins.util;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * Compares the redaction of the output of `oc get secrets -o json`, a few MB for a busy project, by the regular
+ * expression redactSensitiveData used before, by {@link ClientCommandOutputCleaner#redactSensitiveData}, by a
+ * {@link ClientCommandOutputCleaner.Redactor} locating the spans of streamed output, and by a
+ * {@link ClientCommandOutputCleaner.RedactingOutputStream}.
+ */
+@JmhBenchmark
+public class ClientCommandOutputCleanerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SecretList {
+        @Param({"1000", "10000"})
+        public int secrets;
+
+        public String output;
+
+        public byte[] bytes;
+
+        @Setup
+        public void setup() {
+            StringBuilder sb = new StringBuilder("{\n    \"apiVersion\": \"v1\",\n    \"items\": [\n");
+            for (int i = 0; i < secrets; i++) {
+                if (i > 0) {
+                    sb.append(",\n");
+                }
+                sb.append("{\"apiVersion\":\"v1\",\"kind\":\"Secret\",\"data\":{\"password\":\"c2VjcmV0LXBhc3N3b3JkLQ==\",")
+                        .append("\"token\":\"ZXlKaGJHY2lPaUpTVXpJMU5pSXNJbXRwWkNJNklpSjku").append(i).append("\"},")
+                        .append("\"metadata\":{\"name\":\"secret-").append(i).append("\",\"namespace\":\"test\",")
+                        .append("\"annotations\":{\"kubectl.kubernetes.io/last-applied-configuration\":")
+                        .append("\"{\\\"apiVersion\\\":\\\"v1\\\",\\\"data\\\":{\\\"password\\\":\\\"c2VjcmV0\\\"},")
+                        .append("\\\"kind\\\":\\\"Secret\\\"}\\n\"},\"resourceVersion\":\"").append(100000 + i)
+                        .append("\"},\"type\":\"Opaque\"}");
+            }
+            output = sb.append("\n    ],\n    \"kind\": \"List\"\n}\n").toString();
+            bytes = output.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public String regularExpression(SecretList state) {
+        return state.output.replaceAll("(\"data\":)\\{(.*?)\\}", "$1{ REDACTED }");
+    }
+
+    @Benchmark
+    public String redactSensitiveData(SecretList state) {
+        return ClientCommandOutputCleaner.redactSensitiveData(state.output);
+    }
+
+    @Benchmark
+    public long[] redactorSpans(SecretList state) {
+        // as OutputCapture feeds it, in the chunks oc output is read in
+        ClientCommandOutputCleaner.Redactor redactor = new ClientCommandOutputCleaner.Redactor();
+        for (int i = 0; i < state.bytes.length; i += 8192) {
+            redactor.update(state.bytes, i, Math.min(8192, state.bytes.length - i));
+        }
+        return redactor.finish();
+    }
+
+    @Benchmark
+    public void redactingOutputStream(SecretList state) throws IOException {
+        try (OutputStream out = new ClientCommandOutputCleaner.RedactingOutputStream(OutputStream.nullOutputStream())) {
+            for (int i = 0; i < state.bytes.length; i += 8192) {
+                out.write(state.bytes, i, Math.min(8192, state.bytes.length - i));
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.openshift.jenkins.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ClientCommandOutputCleanerTest {
+
+    private static final String SECRET = "{\"kind\":\"Secret\",\"apiVersion\":\"v1\",\"data\":{\"password\":\"czNjcjN0\",\"user\":\"YWRtaW4=\"},"
+            + "\"metadata\":{\"name\":\"db\",\"annotations\":{\"kubectl.kubernetes.io/last-applied-configuration\":"
+            + "\"{\\\"apiVersion\\\":\\\"v1\\\",\\\"data\\\":{\\\"password\\\":\\\"czNjcjN0\\\"},\\\"kind\\\":\\\"Secret\\\"}\\n\"}},"
+            + "\"type\":\"Opaque\"}";
+
+    private static final String SECRET_REDACTED = "{\"kind\":\"Secret\",\"apiVersion\":\"v1\",\"data\":{ REDACTED },"
+            + "\"metadata\":{\"name\":\"db\",\"annotations\":{\"kubectl.kubernetes.io/last-applied-configuration\":"
+            + "\"{\\\"apiVersion\\\":\\\"v1\\\",\\\"data\\\":{ REDACTED },\\\"kind\\\":\\\"Secret\\\"}\\n\"}},"
+            + "\"type\":\"Opaque\"}";
+
+    // what redactSensitiveData did before it used Redactor; right for flat, single line objects only
+    private static String legacy(String output) {
+        return output.replaceAll("(\"data\":)\\{(.*?)\\}", "$1{ REDACTED }");
+    }
+
+    private static String redact(String output) {
+        return ClientCommandOutputCleaner.redactSensitiveData(output);
+    }
+
+    // redacts bytes fed to a Redactor in the given chunks, then copied with Redactor.apply
+    private static String redactInChunks(String output, int... splits) throws IOException {
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        ClientCommandOutputCleaner.Redactor redactor = new ClientCommandOutputCleaner.Redactor();
+        int from = 0;
+        for (int split : splits) {
+            redactor.update(bytes, from, split - from);
+            from = split;
+        }
+        redactor.update(bytes, from, bytes.length - from);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientCommandOutputCleaner.Redactor.apply(new ByteArrayInputStream(bytes), redactor.finish(), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // redacts output written to a RedactingOutputStream chunk bytes at a time
+    private static String redactStreaming(String output, int chunk) throws IOException {
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream redacting = new ClientCommandOutputCleaner.RedactingOutputStream(out)) {
+            for (int i = 0; i < bytes.length; i += chunk) {
+                redacting.write(bytes, i, Math.min(chunk, bytes.length - i));
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void matchesTheRegularExpressionOnFlatObjects() {
+        String[] outputs = {
+                "{\"data\":{\"a\":\"b\"}}",
+                "{\"kind\":\"Secret\",\"data\":{\"a\":\"YQ==\",\"b\":\"Yg==\"},\"type\":\"Opaque\"}",
+                "[{\"data\":{\"a\":\"1\"}},{\"data\":{}},{\"data\":{\"c\":\"3\"}}]",
+                "{\"data\":null,\"other\":{\"a\":\"b\"}}",
+                "{\"data\":\"not an object\"}",
+                "{\"metadata\":{\"name\":\"data\"},\"spec\":{\"x\":1}}",
+                "no JSON at all",
+                "",
+        };
+        for (String output : outputs) {
+            assertEquals(legacy(output), redact(output), output);
+        }
+    }
+
+    @Test
+    public void leavesOutputWithoutDataAsItIs() {
+        String output = "{\"kind\":\"Pod\",\"metadata\":{\"name\":\"frontend\"}}";
+        assertSame(output, redact(output));
+        assertNull(redact(null));
+    }
+
+    @Test
+    public void redactsNestedBraces() {
+        // the regular expression stopped at the first closing brace and leaked the rest
+        String output = "{\"data\":{\"a\":{\"b\":{\"c\":\"s3cr3t\"}},\"d\":\"s3cr3t\"},\"kind\":\"ConfigMap\"}";
+        assertEquals("{\"data\":{ REDACTED },\"kind\":\"ConfigMap\"}", redact(output));
+        assertEquals("{\"data\":{ REDACTED }},\"d\":\"s3cr3t\"},\"kind\":\"ConfigMap\"}", legacy(output));
+    }
+
+    @Test
+    public void ignoresBracesAndEscapedQuotesInStrings() {
+        assertEquals("{\"data\":{ REDACTED },\"b\":1}", redact("{\"data\":{\"a\":\"}\\\"}{\\\\\"},\"b\":1}"));
+        assertEquals("{\"data\":{ REDACTED }}", redact("{\"data\":{\"a\\\"}\":\"x\"}}"));
+    }
+
+    @Test
+    public void redactsPrettyPrintedObjects() {
+        String output = "{\n    \"data\": {\n        \"password\": \"czNjcjN0\"\n    },\n    \"kind\": \"Secret\"\n}\n";
+        assertEquals("{\n    \"data\": { REDACTED },\n    \"kind\": \"Secret\"\n}\n", redact(output));
+    }
+
+    @Test
+    public void redactsObjectsEmbeddedInStrings() {
+        assertEquals(SECRET_REDACTED, redact(SECRET));
+        // the enclosing string ends before the embedded object does
+        assertEquals("{\"a\":\"\\\"data\\\":{ REDACTED }\",\"b\":{\"c\":1}}",
+                redact("{\"a\":\"\\\"data\\\":{\\\"k\\\":\",\"b\":{\"c\":1}}"));
+    }
+
+    @Test
+    public void redactsObjectsLeftOpenToTheEnd() {
+        assertEquals("{\"data\":{ REDACTED }", redact("{\"data\":{\"a\":{\"b\":\"c\"}"));
+        assertEquals("\"data\":{ REDACTED }", redact("\"data\":{"));
+    }
+
+    @Test
+    public void redactsTheSameWhereverTheOutputIsSplit() throws IOException {
+        String output = SECRET + "\n" + "{\"data\":{\"a\":{\"b\":\"}\"}},\"c\":\"\u00e9\"}" + "\n" + SECRET;
+        String expected = redact(output);
+        int length = output.getBytes(StandardCharsets.UTF_8).length;
+        for (int split = 0; split <= length; split++) {
+            assertEquals(expected, redactInChunks(output, split), "split at " + split);
+        }
+        int[] everyByte = new int[length];
+        for (int i = 0; i < length; i++) {
+            everyByte[i] = i;
+        }
+        assertEquals(expected, redactInChunks(output, everyByte));
+        for (int chunk : new int[]{1, 2, 3, 7, 64, length}) {
+            assertEquals(expected, redactStreaming(output, chunk), "chunks of " + chunk);
+        }
+    }
+
+    @Test
+    public void streamsUnredactedBytesInRuns() throws IOException {
+        List<String> writes = new ArrayList<>();
+        OutputStream recording = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.add(String.valueOf((char) b));
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(new String(b, off, len, StandardCharsets.UTF_8));
+            }
+        };
+        OutputStream redacting = new ClientCommandOutputCleaner.RedactingOutputStream(recording);
+        byte[] first = "{\"kind\":\"Secret\",\"data\":{\"a\":".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "\"YQ==\"},\"type\":\"Opaque\"}\n".getBytes(StandardCharsets.UTF_8);
+        redacting.write(first, 0, first.length);
+        redacting.write(second, 0, second.length);
+        List<String> expected = new ArrayList<>();
+        expected.add("{\"kind\":\"Secret\",\"data\":");
+        expected.add("{ REDACTED }");
+        expected.add(",\"type\":\"Opaque\"}\n");
+        assertEquals(expected, writes);
+    }
+}
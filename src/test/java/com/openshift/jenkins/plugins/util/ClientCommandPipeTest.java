@@ -0,0 +1,97 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ClientCommandPipeTest {
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void requireSh() {
+        assumeTrue(new File("/bin/sh").canExecute(), "the pipe runs in sh");
+    }
+
+    private int pipe(Launcher launcher, String stdin, String[] producer, String[] consumer)
+            throws IOException, InterruptedException {
+        return ClientCommandPipe.run(launcher, new FilePath(new File(System.getProperty("java.io.tmpdir"))),
+                new EnvVars(System.getenv()), stdin == null ? null : stdin.getBytes(StandardCharsets.UTF_8),
+                producer, consumer, "test", stdout, stderr);
+    }
+
+    private int pipe(String stdin, String[] producer, String[] consumer) throws IOException, InterruptedException {
+        return pipe(new Launcher.LocalLauncher(TaskListener.NULL), stdin, producer, consumer);
+    }
+
+    private static Launcher windows() {
+        return new Launcher.LocalLauncher(TaskListener.NULL) {
+            @Override
+            public boolean isUnix() {
+                return false;
+            }
+        };
+    }
+
+    private static String[] sh(String script) {
+        return new String[]{"sh", "-c", script};
+    }
+
+    private String out() {
+        return new String(stdout.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void quotesArgumentsForSh() throws IOException, InterruptedException {
+        assertEquals("'it'\\''s' 'a b'", ClientCommandPipe.quote(new String[]{"it's", "a b"}));
+        String[] args = {"it's", "''", "a b", "$HOME", "`id`", "\"x\"", "", "back\\slash"};
+        Process p = new ProcessBuilder("sh", "-c", "printf '%s\\n' " + ClientCommandPipe.quote(args)).start();
+        String printed = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, p.waitFor());
+        assertEquals(String.join("\n", args) + "\n", printed);
+    }
+
+    @Test
+    public void pipesTheInputThroughBothCommands() throws IOException, InterruptedException {
+        assertEquals(0, pipe("it's piped", new String[]{"cat"}, new String[]{"tr", "a-z", "A-Z"}));
+        assertEquals("IT'S PIPED", out());
+    }
+
+    @Test
+    public void returnsTheStatusOfTheProducerIfItFailed() throws IOException, InterruptedException {
+        assertEquals(3, pipe(null, sh("echo partial; echo oops >&2; exit 3"), sh("cat; exit 5")));
+        assertEquals("partial\n", out());
+        assertEquals("oops\n", new String(stderr.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void returnsTheStatusOfTheConsumerIfTheProducerSucceeded() throws IOException, InterruptedException {
+        assertEquals(5, pipe(null, new String[]{"echo", "objects"}, sh("cat; exit 5")));
+        assertEquals("objects\n", out());
+    }
+
+    @Test
+    public void runsTheCommandsOneAfterTheOtherOnWindows() throws IOException, InterruptedException {
+        assertEquals(0, pipe(windows(), "it's piped", new String[]{"cat"}, new String[]{"tr", "a-z", "A-Z"}));
+        assertEquals("IT'S PIPED", out());
+        assertEquals(5, pipe(windows(), null, new String[]{"echo", "objects"}, sh("cat >/dev/null; exit 5")));
+    }
+
+    @Test
+    public void skipsTheConsumerOnWindowsIfTheProducerFailed() throws IOException, InterruptedException {
+        assertEquals(3, pipe(windows(), null, sh("echo partial; exit 3"), sh("echo applied")));
+        assertEquals("", out());
+    }
+}
@@ -0,0 +1,254 @@
+package com.openshift.jenkins.plugins.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/***
+ * {@link MockApiServer} is a minimal, in-memory stand-in for the Kubernetes API server, so {@link RestClientEngine}
+ * can be tested offline. It serves plain HTTP on the loopback interface and understands just enough of the API for
+ * the engine: getting, listing (with equality label selectors), deleting and merge patching objects.
+ * <p>
+ * Resource types which were not passed to the constructor answer 404 without details, as a cluster which does not
+ * serve a type does.
+ */
+final class MockApiServer implements AutoCloseable {
+
+    static final String TOKEN = "sha256~test";
+
+    private final HttpServer server;
+    private final Set<String> resources;
+    // objects by API path, e.g. /api/v1/namespaces/test/pods/frontend
+    private final Map<String, Map<String, Object>> objects = new TreeMap<>();
+    // objects whose deletion never completes, as if held by a finalizer; see holdOnDelete
+    private final Set<String> finalized = new HashSet<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private int resourceVersion = 1;
+
+    /***
+     * @param resources the resource types served, by plural name, e.g. "pods"
+     */
+    MockApiServer(String... resources) throws IOException {
+        this.resources = new HashSet<>(Arrays.asList(resources));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /***
+     * @return the requests served so far, as "METHOD path"
+     */
+    List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    synchronized void add(ResourceKind kind, String namespace, String name, Map<String, String> labels) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("name", name);
+        if (kind.namespaced) {
+            metadata.put("namespace", namespace);
+        }
+        metadata.put("resourceVersion", String.valueOf(resourceVersion++));
+        if (labels != null) {
+            metadata.put("labels", new LinkedHashMap<String, Object>(labels));
+        }
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("apiVersion", kind.getApiVersion());
+        object.put("kind", kind.kind);
+        object.put("metadata", metadata);
+        object.put("spec", new LinkedHashMap<String, Object>());
+        objects.put(kind.getCollectionPath(namespace) + "/" + name, object);
+    }
+
+    synchronized Map<String, Object> get(ResourceKind kind, String namespace, String name) {
+        return objects.get(kind.getCollectionPath(namespace) + "/" + name);
+    }
+
+    /***
+     * Makes the deletion of an object never complete.
+     */
+    synchronized void holdOnDelete(ResourceKind kind, String namespace, String name) {
+        finalized.add(kind.getCollectionPath(namespace) + "/" + name);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            requests.add(method + " " + path);
+            if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, status(401, "Unauthorized", "Unauthorized", null));
+                return;
+            }
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            String[] segments = path.substring(1).split("/");
+            synchronized (this) {
+                if (resources.contains(segments[segments.length - 1]) && method.equals("GET")) {
+                    respond(exchange, 200, list(path, exchange.getRequestURI().getRawQuery()));
+                } else if (segments.length > 1 && resources.contains(segments[segments.length - 2])) {
+                    handleObject(exchange, method, path, segments[segments.length - 2], segments[segments.length - 1],
+                            exchange.getRequestHeaders().getFirst("Content-Type"), body);
+                } else {
+                    respond(exchange, 404, status(404, "NotFound", "the server could not find the requested resource", null));
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleObject(HttpExchange exchange, String method, String path, String resource, String name,
+                              String contentType, String body) throws IOException {
+        Map<String, Object> object = objects.get(path);
+        if (object == null) {
+            respond(exchange, 404, status(404, "NotFound", resource + " \"" + name + "\" not found", name));
+            return;
+        }
+        switch (method) {
+            case "GET":
+                respond(exchange, 200, JsonOutput.toJson(object));
+                break;
+            case "DELETE":
+                if (finalized.contains(path)) {
+                    metadataOf(object).put("deletionTimestamp", "2024-01-01T00:00:00Z");
+                } else {
+                    objects.remove(path);
+                }
+                respond(exchange, 200, JsonOutput.toJson(object));
+                break;
+            case "PATCH":
+                if (!"application/merge-patch+json".equals(contentType)
+                        && !"application/strategic-merge-patch+json".equals(contentType)) {
+                    respond(exchange, 415, status(415, "UnsupportedMediaType", "unsupported patch type " + contentType, null));
+                    return;
+                }
+                String before = JsonOutput.toJson(object);
+                merge(object, asMap(new JsonSlurper().parseText(body)));
+                if (!before.equals(JsonOutput.toJson(object))) {
+                    metadataOf(object).put("resourceVersion", String.valueOf(resourceVersion++));
+                }
+                respond(exchange, 200, JsonOutput.toJson(object));
+                break;
+            default:
+                respond(exchange, 405, status(405, "MethodNotAllowed", method + " is not allowed", null));
+                break;
+        }
+    }
+
+    private String list(String collection, String rawQuery) {
+        Map<String, String> selector = new LinkedHashMap<>();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                if (param.startsWith("labelSelector=")) {
+                    for (String term : URLDecoder.decode(param.substring(14), StandardCharsets.UTF_8).split(",")) {
+                        int eq = term.indexOf('=');
+                        selector.put(term.substring(0, eq), term.substring(eq + 1));
+                    }
+                }
+            }
+        }
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> e : objects.entrySet()) {
+            String parent = e.getKey().substring(0, e.getKey().lastIndexOf('/'));
+            if (!parent.equals(collection)) {
+                continue;
+            }
+            Map<String, Object> labels = asMap(metadataOf(e.getValue()).get("labels"));
+            boolean selected = true;
+            for (Map.Entry<String, String> term : selector.entrySet()) {
+                selected &= term.getValue().equals(labels.get(term.getKey()));
+            }
+            if (selected) {
+                // like the API server, items of a list carry neither kind nor apiVersion
+                Map<String, Object> item = new LinkedHashMap<>(e.getValue());
+                item.remove("kind");
+                item.remove("apiVersion");
+                items.add(item);
+            }
+        }
+        Map<String, Object> list = new LinkedHashMap<>();
+        list.put("kind", "List");
+        list.put("apiVersion", "v1");
+        list.put("metadata", Collections.singletonMap("resourceVersion", String.valueOf(resourceVersion)));
+        list.put("items", items);
+        return JsonOutput.toJson(list);
+    }
+
+    // RFC 7386
+    private static void merge(Map<String, Object> target, Map<String, Object> patch) {
+        for (Map.Entry<String, Object> e : patch.entrySet()) {
+            if (e.getValue() == null) {
+                target.remove(e.getKey());
+            } else if (e.getValue() instanceof Map) {
+                Object existing = target.get(e.getKey());
+                Map<String, Object> nested = existing instanceof Map ? asMap(existing) : new LinkedHashMap<>();
+                merge(nested, asMap(e.getValue()));
+                target.put(e.getKey(), nested);
+            } else {
+                target.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Object> metadataOf(Map<String, Object> object) {
+        return asMap(object.get("metadata"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : new LinkedHashMap<>();
+    }
+
+    private static String status(int code, String reason, String message, String name) {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("kind", "Status");
+        s.put("apiVersion", "v1");
+        s.put("status", "Failure");
+        s.put("message", message);
+        s.put("reason", reason);
+        s.put("details", name == null ? Collections.emptyMap() : Collections.singletonMap("name", name));
+        s.put("code", code);
+        return JsonOutput.toJson(s);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
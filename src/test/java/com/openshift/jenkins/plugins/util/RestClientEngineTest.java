@@ -0,0 +1,290 @@
+package com.openshift.jenkins.plugins.util;
+
+import groovy.json.JsonSlurper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RestClientEngineTest {
+
+    private static final String PROJECT = "test";
+    private static final ResourceKind POD = ResourceKind.lookup("pod");
+    private static final ResourceKind DC = ResourceKind.lookup("dc");
+
+    private MockApiServer api;
+
+    private static final class Outcome {
+        int status;
+        String out;
+        String err;
+    }
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        api = new MockApiServer("pods", "deploymentconfigs");
+        api.add(POD, PROJECT, "frontend", Collections.singletonMap("app", "web"));
+        api.add(POD, PROJECT, "backend", Collections.singletonMap("app", "api"));
+        api.add(POD, PROJECT, "frontend-2", Collections.singletonMap("app", "web"));
+        api.add(DC, PROJECT, "frontend", null);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        api.close();
+    }
+
+    private static ClientCommandBuilder command(String server, String token, boolean skipTLSVerify, String verb, String... args) {
+        return new ClientCommandBuilder(server, PROJECT, skipTLSVerify, null, verb, null, Arrays.asList(args), null,
+                null, token, 0, false);
+    }
+
+    private RestClientEngine engine(String verb, String... args) {
+        RestClientEngine engine = RestClientEngine.forCommand(command(api.getUrl(), MockApiServer.TOKEN, false, verb, args),
+                RestClientEngine.NATIVE);
+        assertNotNull(engine, verb + " " + Arrays.toString(args) + " should be served natively");
+        return engine;
+    }
+
+    private static Outcome run(RestClientEngine engine) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Outcome o = new Outcome();
+        o.status = engine.execute(null, out, err);
+        o.out = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        o.err = new String(err.toByteArray(), StandardCharsets.UTF_8);
+        return o;
+    }
+
+    private Outcome run(String verb, String... args) throws Exception {
+        return run(engine(verb, args));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> metadata(ResourceKind kind, String name) {
+        return (Map<String, Object>) api.get(kind, PROJECT, name).get("metadata");
+    }
+
+    @Test
+    public void getsNames() throws Exception {
+        Outcome o = run("get", "pod/frontend", "dc/frontend", "-o=name");
+        assertEquals(0, o.status);
+        assertEquals("pod/frontend\ndeploymentconfig.apps.openshift.io/frontend\n", o.out);
+        assertEquals("", o.err);
+    }
+
+    @Test
+    public void listsNamesBySelector() throws Exception {
+        Outcome o = run("get", "pods", "-l", "app=web", "-o=name");
+        assertEquals(0, o.status);
+        assertEquals("pod/frontend\npod/frontend-2\n", o.out);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getsJson() throws Exception {
+        Outcome single = run("get", "pod/frontend", "-o=json");
+        assertEquals(0, single.status);
+        Map<String, Object> pod = (Map<String, Object>) new JsonSlurper().parseText(single.out);
+        assertEquals("Pod", pod.get("kind"));
+
+        Outcome list = run("get", "pods", "-l", "app=web", "-o=json");
+        assertEquals(0, list.status);
+        Map<String, Object> model = (Map<String, Object>) new JsonSlurper().parseText(list.out);
+        assertEquals("List", model.get("kind"));
+        List<Map<String, Object>> items = (List<Map<String, Object>>) model.get("items");
+        assertEquals(2, items.size());
+        // oc fills in the type of list items
+        assertEquals("Pod", items.get(0).get("kind"));
+        assertEquals("v1", items.get(0).get("apiVersion"));
+    }
+
+    @Test
+    public void getFailsOnMissingObjectUnlessIgnored() throws Exception {
+        Outcome missing = run("get", "pod/nothere", "-o=name");
+        assertEquals(1, missing.status);
+        assertEquals("", missing.out);
+        assertTrue(missing.err.startsWith("Error from server (NotFound): pods \"nothere\" not found"), missing.err);
+
+        Outcome ignored = run("get", "pod/nothere", "-o=name", "--ignore-not-found");
+        assertEquals(0, ignored.status);
+        assertEquals("", ignored.err);
+    }
+
+    @Test
+    public void deletesAndWaits() throws Exception {
+        Outcome o = run("delete", "pod/frontend");
+        assertEquals(0, o.status);
+        assertEquals("pod \"frontend\" deleted\n", o.out);
+        assertNull(api.get(POD, PROJECT, "frontend"));
+        // the deletion was confirmed by getting the object until it was gone
+        assertEquals("GET /api/v1/namespaces/test/pods/frontend", api.getRequests().get(api.getRequests().size() - 1));
+    }
+
+    @Test
+    public void deletesBySelector() throws Exception {
+        Outcome o = run("delete", "pods", "-l", "app=web", "-o=name");
+        assertEquals(0, o.status);
+        assertEquals("pod/frontend\npod/frontend-2\n", o.out);
+        assertNotNull(api.get(POD, PROJECT, "backend"));
+    }
+
+    @Test
+    public void deleteGivesUpAfterTimeout() throws Exception {
+        api.holdOnDelete(POD, PROJECT, "frontend");
+        long start = System.currentTimeMillis();
+        Outcome o = run("delete", "pod/frontend", "--timeout=1s");
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(1, o.status);
+        assertEquals("pod \"frontend\" deleted\n", o.out);
+        assertEquals("error: timed out waiting for the condition on pods/frontend\n", o.err);
+        assertTrue(elapsed >= 1000 && elapsed < RestClientEngine.DEFAULT_DELETE_TIMEOUT_MILLIS, "waited " + elapsed + "ms");
+    }
+
+    @Test
+    public void deleteWithoutWaitReturnsAtOnce() throws Exception {
+        api.holdOnDelete(POD, PROJECT, "frontend");
+        Outcome o = run("delete", "pod/frontend", "--wait=false");
+        assertEquals(0, o.status);
+        assertNotNull(api.get(POD, PROJECT, "frontend"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void patches() throws Exception {
+        Outcome o = run("patch", "dc/frontend", "-p", "'{\"spec\":{\"replicas\":2}}'", "--type=merge");
+        assertEquals(0, o.status);
+        assertEquals("deploymentconfig.apps.openshift.io/frontend patched\n", o.out);
+        assertEquals(2, ((Map<String, Object>) api.get(DC, PROJECT, "frontend").get("spec")).get("replicas"));
+
+        Outcome again = run("patch", "dc/frontend", "-p", "'{\"spec\":{\"replicas\":2}}'", "--type=merge");
+        assertEquals(0, again.status);
+        assertEquals("deploymentconfig.apps.openshift.io/frontend patched (no change)\n", again.out);
+    }
+
+    @Test
+    public void patchReportsMissingObject() throws Exception {
+        Outcome o = run("patch", "dc/nothere", "-p", "'{\"spec\":{\"replicas\":2}}'");
+        assertEquals(1, o.status);
+        assertTrue(o.err.contains("\"nothere\" not found"), o.err);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void labels() throws Exception {
+        Outcome o = run("label", "pod/frontend", "tier=1");
+        assertEquals(0, o.status);
+        assertEquals("pod/frontend labeled\n", o.out);
+        Map<String, Object> labels = (Map<String, Object>) metadata(POD, "frontend").get("labels");
+        assertEquals("1", labels.get("tier"));
+        assertEquals("web", labels.get("app"));
+
+        Outcome conflict = run("label", "pod/frontend", "app=other");
+        assertEquals(1, conflict.status);
+        assertEquals("error: 'app' already has a value (web), and --overwrite is false\n", conflict.err);
+
+        Outcome overwritten = run("label", "pod/frontend", "app=other", "--overwrite");
+        assertEquals(0, overwritten.status);
+        assertEquals("other", ((Map<String, Object>) metadata(POD, "frontend").get("labels")).get("app"));
+
+        Outcome removed = run("label", "pod/frontend", "tier-");
+        assertEquals(0, removed.status);
+        assertNull(((Map<String, Object>) metadata(POD, "frontend").get("labels")).get("tier"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void annotatesBySelector() throws Exception {
+        Outcome o = run("annotate", "pods", "-l", "app=web", "note=x");
+        assertEquals(0, o.status);
+        assertEquals("pod/frontend annotated\npod/frontend-2 annotated\n", o.out);
+        assertEquals("x", ((Map<String, Object>) metadata(POD, "frontend-2").get("annotations")).get("note"));
+        assertNull(metadata(POD, "backend").get("annotations"));
+
+        Outcome unchanged = run("annotate", "pod/frontend", "note=x");
+        assertEquals("pod/frontend not annotated\n", unchanged.out);
+    }
+
+    @Test
+    public void leavesUnsupportedInvocationsToOc() {
+        String url = api.getUrl();
+        // not selected
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "get", "pod/frontend", "-o=name"), RestClientEngine.OC));
+        // unknown kind, output format, flag or verb
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "get", "widget/frontend", "-o=name"), RestClientEngine.NATIVE));
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "get", "pod/frontend", "-o=yaml"), RestClientEngine.NATIVE));
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "get", "pod/frontend", "-o=name", "--show-labels"), RestClientEngine.NATIVE));
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "apply", "-f", "-"), RestClientEngine.NATIVE));
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "delete", "pod/frontend", "--timeout=soon"), RestClientEngine.NATIVE));
+        // connection not fully described by the context
+        assertNull(RestClientEngine.forCommand(command(url, null, false, "get", "pod/frontend", "-o=name"), RestClientEngine.NATIVE));
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, true, "get", "pod/frontend", "-o=name"), RestClientEngine.NATIVE));
+        // deleting a whole collection needs --all or a selector
+        assertNull(RestClientEngine.forCommand(command(url, MockApiServer.TOKEN, false, "delete", "pods"), RestClientEngine.NATIVE));
+    }
+
+    @Test
+    public void fallsBackWhenTypeIsNotServed() throws Exception {
+        RestClientEngine engine = engine("get", "route/frontend", "-o=name");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertThrows(RestClientEngine.FallbackException.class, () -> engine.execute(null, out, err));
+        assertEquals(0, out.size());
+        assertEquals(0, err.size());
+
+        RestClientEngine list = engine("get", "routes", "-o=name");
+        assertThrows(RestClientEngine.FallbackException.class, () -> list.execute(null, out, err));
+    }
+
+    @Test
+    public void fallsBackAtOnceWhenServerIsUnreachable() throws Exception {
+        String url;
+        try (MockApiServer gone = new MockApiServer("pods")) {
+            url = gone.getUrl();
+        }
+        ClientCommandBuilder cmd = command(url, MockApiServer.TOKEN, false, "get", "pod/frontend", "-o=name");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        RestClientEngine.FallbackException first = assertThrows(RestClientEngine.FallbackException.class,
+                () -> RestClientEngine.forCommand(cmd, RestClientEngine.NATIVE).execute(null, out, err));
+        assertTrue(first.getMessage().startsWith("unable to reach"), first.getMessage());
+        // the server is remembered as unreachable; later calls do not try to connect again
+        RestClientEngine.FallbackException second = assertThrows(RestClientEngine.FallbackException.class,
+                () -> RestClientEngine.forCommand(cmd, RestClientEngine.NATIVE).execute(null, out, err));
+        assertTrue(second.getMessage().contains("could not be reached from the controller recently"), second.getMessage());
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void rejectsWrongToken() throws Exception {
+        RestClientEngine engine = RestClientEngine.forCommand(command(api.getUrl(), "wrong", false, "get", "pod/frontend", "-o=name"),
+                RestClientEngine.NATIVE);
+        Outcome o = run(engine);
+        assertEquals(1, o.status);
+        assertEquals("error: You must be logged in to the server (Unauthorized)\n", o.err);
+    }
+
+    @Test
+    public void parsesDurations() {
+        assertEquals(0, RestClientEngine.parseDuration("0"));
+        assertEquals(30000, RestClientEngine.parseDuration("30s"));
+        assertEquals(90000, RestClientEngine.parseDuration("1m30s"));
+        assertEquals(3600000 + 1500, RestClientEngine.parseDuration("1h1.5s"));
+        assertEquals(250, RestClientEngine.parseDuration("250ms"));
+        assertEquals(-1, RestClientEngine.parseDuration("30"));
+        assertEquals(-1, RestClientEngine.parseDuration("soon"));
+        assertEquals(-1, RestClientEngine.parseDuration("5s later"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.openshift.jenkins.plugins.util;
+
+import groovy.json.JsonSlurper;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/***
+ * Compares {@link SerializableJson} with the JsonSlurper parse followed by the conversion into HashMaps the DSL used
+ * before, on the output of `oc get pods -o json` for a project of a few thousand pods.
+ */
+@JmhBenchmark
+public class SerializableJsonBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PodList {
+        @Param({"500", "5000"})
+        public int pods;
+
+        public String json;
+
+        public SerializableJson.Projection projection;
+
+        @Setup
+        public void setup() {
+            StringBuilder sb = new StringBuilder("{\"kind\":\"List\",\"apiVersion\":\"v1\",\"metadata\":{},\"items\":[");
+            for (int i = 0; i < pods; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"frontend-").append(i)
+                        .append("\",\"namespace\":\"test\",\"uid\":\"5f1c6b2e-").append(i)
+                        .append("\",\"resourceVersion\":\"").append(100000 + i)
+                        .append("\",\"labels\":{\"app\":\"frontend\",\"deployment\":\"frontend-").append(i % 7)
+                        .append("\"},\"annotations\":{\"openshift.io/scc\":\"restricted-v2\",\"description\":")
+                        .append("\"line one\\nline \\\"two\\\" \\u00e9\"}},")
+                        .append("\"spec\":{\"containers\":[{\"name\":\"web\",\"image\":\"quay.io/example/web@sha256:")
+                        .append("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef\",")
+                        .append("\"ports\":[{\"containerPort\":8080,\"protocol\":\"TCP\"}],")
+                        .append("\"resources\":{\"limits\":{\"cpu\":\"500m\",\"memory\":\"512Mi\"}},")
+                        .append("\"env\":[{\"name\":\"RATIO\",\"value\":\"0.75\"},{\"name\":\"MODE\",\"value\":\"production\"}]}],")
+                        .append("\"restartPolicy\":\"Always\",\"terminationGracePeriodSeconds\":30},")
+                        .append("\"status\":{\"phase\":\"Running\",\"podIP\":\"10.128.").append(i % 256).append('.')
+                        .append(i / 256).append("\",\"conditions\":[{\"type\":\"Ready\",\"status\":\"True\",")
+                        .append("\"lastTransitionTime\":\"2024-01-01T00:00:00Z\"}],\"containerStatuses\":[{\"name\":\"web\",")
+                        .append("\"ready\":true,\"restartCount\":").append(i % 3).append("}]}}");
+            }
+            json = sb.append("]}").toString();
+            projection = SerializableJson.Projection.of(Arrays.asList("metadata.name", "status.phase"));
+        }
+    }
+
+    @Benchmark
+    public HashMap serializableJson(PodList state) {
+        return SerializableJson.parseMap(state.json);
+    }
+
+    @Benchmark
+    public HashMap serializableJsonProjected(PodList state) {
+        return SerializableJson.parseMap(state.json, state.projection);
+    }
+
+    @Benchmark
+    public HashMap jsonSlurper(PodList state) {
+        return serializableMap(state.json);
+    }
+
+    // the conversion OpenShiftDSL.serializableMap performed before it used SerializableJson
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static HashMap serializableMap(String json) {
+        Map m = (Map) new JsonSlurper().parseText(json);
+        HashMap master = new HashMap(m);
+        Stack<HashMap> s = new Stack<HashMap>();
+        s.push(master);
+        while (s.size() > 0) {
+            HashMap target = s.pop();
+            for (Object o : target.entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+                if (e.getValue() instanceof Map) {
+                    HashMap he = new HashMap((Map) e.getValue());
+                    e.setValue(he);
+                    s.push(he);
+                }
+                if (e.getValue() instanceof List) {
+                    List l = (List) e.getValue();
+                    for (int i = 0; i < l.size(); i++) {
+                        Object item = l.get(i);
+                        if (item instanceof Map) {
+                            HashMap he = new HashMap((Map) item);
+                            l.set(i, he);
+                            s.push(he);
+                        }
+                    }
+                }
+            }
+        }
+        return master;
+    }
+}
@@ -0,0 +1,188 @@
+package com.openshift.jenkins.plugins.util;
+
+import groovy.json.JsonException;
+import groovy.json.JsonSlurper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerializableJsonTest {
+
+    private static final String LIST = "{\"kind\":\"List\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"\"},"
+            + "\"items\":["
+            + "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"frontend\",\"labels\":{\"app\":\"web\"}},"
+            + "\"spec\":{\"containers\":[{\"name\":\"a\",\"image\":\"nginx:1\"},{\"name\":\"b\",\"image\":\"redis:7\"}]},"
+            + "\"status\":{\"phase\":\"Running\",\"conditions\":[{\"type\":\"Ready\",\"status\":\"True\"}]}},"
+            + "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"backend\"},"
+            + "\"spec\":{\"containers\":[{\"name\":\"c\",\"image\":\"app:2\"}]},\"status\":{\"phase\":\"Pending\"}}"
+            + "]}";
+
+    // hands out one character per read, so that every token straddles a refill of the parser's buffer
+    private static final class TrickleReader extends Reader {
+        private final String s;
+        private int pos;
+
+        TrickleReader(String s) {
+            this.s = s;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos == s.length()) {
+                return -1;
+            }
+            cbuf[off] = s.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Object parse(String json) throws IOException {
+        return SerializableJson.parse(new StringReader(json), null);
+    }
+
+    @Test
+    public void parsesLikeJsonSlurper() throws IOException {
+        Map<String, Object> map = SerializableJson.parseMap(LIST);
+        assertEquals(new JsonSlurper().parseText(LIST), map);
+        assertEquals(HashMap.class, map.getClass());
+        assertEquals(map, SerializableJson.parseMap(new TrickleReader(LIST), null));
+    }
+
+    @Test
+    public void decodesEscapes() throws IOException {
+        assertEquals("a\"b\\c/d\be\ff\ng\rh\ti", parse("\"a\\\"b\\\\c\\/d\\be\\ff\\ng\\rh\\ti\""));
+        assertEquals("{\"x\":1}", parse("\"{\\\"x\\\":1}\""));
+        assertThrows(JsonException.class, () -> parse("\"\\x\""));
+        assertThrows(JsonException.class, () -> parse("\"abc"));
+        assertThrows(JsonException.class, () -> parse("\"abc\\"));
+    }
+
+    @Test
+    public void decodesUnicode() throws IOException {
+        assertEquals("\u00e9t\u00e9", parse("\"\\u00e9t\\u00E9\""));
+        // characters outside the BMP arrive as an escaped surrogate pair or as they are
+        assertEquals("\uD83D\uDE80", parse("\"\\ud83d\\ude80\""));
+        assertEquals("caf\u00e9 \uD83D\uDE80", parse("\"caf\u00e9 \uD83D\uDE80\""));
+        assertEquals("\u0000", parse("\"\\u0000\""));
+        assertThrows(JsonException.class, () -> parse("\"\\u00g1\""));
+        assertThrows(JsonException.class, () -> parse("\"\\u00\""));
+    }
+
+    @Test
+    public void keepsStringsLongerThanTheBuffer() throws IOException {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        chars[8191] = '\u00e9';
+        String s = new String(chars);
+        assertEquals(s, parse("\"" + s + "\""));
+        assertEquals("a\nb" + s, parse("\"a\\nb" + s + "\""));
+    }
+
+    @Test
+    public void typesNumbersLikeJsonSlurper() throws IOException {
+        assertEquals(0, parse("0"));
+        assertEquals(-42, parse("-42"));
+        assertEquals(Integer.MAX_VALUE, parse("2147483647"));
+        assertEquals(Integer.MIN_VALUE, parse("-2147483648"));
+        assertEquals(2147483648L, parse("2147483648"));
+        assertEquals(Long.MAX_VALUE, parse("9223372036854775807"));
+        // JsonSlurper silently overflows integers this long into a Long
+        assertEquals(new BigInteger("9223372036854775808"), parse("9223372036854775808"));
+        assertEquals(new BigInteger("99999999999999999999"), parse("99999999999999999999"));
+        assertEquals(new BigDecimal("1.50"), parse("1.50"));
+        assertEquals(new BigDecimal("-2.5E+3"), parse("-2.5e+3"));
+        assertEquals(new BigDecimal("1E-7"), parse("1E-7"));
+        for (String n : new String[]{"7", "123456789012", "3.25", "6.02e23"}) {
+            assertEquals(new JsonSlurper().parseText("[" + n + "]"), parse("[" + n + "]"), n);
+        }
+        assertThrows(JsonException.class, () -> parse("1.2.3"));
+        assertThrows(JsonException.class, () -> parse("--1"));
+    }
+
+    @Test
+    public void parsesLiteralsAndStructure() throws IOException {
+        assertEquals(Boolean.TRUE, parse(" true "));
+        assertEquals(Boolean.FALSE, parse("false"));
+        assertNull(parse("null"));
+        assertEquals(Collections.emptyList(), parse("[ ]"));
+        assertEquals(Collections.emptyMap(), parse("{ }"));
+        assertEquals(Arrays.asList(1, "a", null, Collections.singletonMap("b", true)),
+                parse("[1, \"a\", null, {\"b\": true}]"));
+        // like JsonSlurper, anything after the first value is ignored
+        assertEquals(1, parse("1 trailing"));
+        assertThrows(JsonException.class, () -> parse("tru"));
+        assertThrows(JsonException.class, () -> parse("{\"a\" 1}"));
+        assertThrows(JsonException.class, () -> parse("{\"a\":1"));
+        assertThrows(JsonException.class, () -> parse("[1 2]"));
+        assertThrows(JsonException.class, () -> parse(""));
+        assertThrows(JsonException.class, () -> SerializableJson.parseMap("[1]"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void projectsItemsOfLists() throws IOException {
+        SerializableJson.Projection projection =
+                SerializableJson.Projection.of(Arrays.asList("metadata.name", "spec.containers.image"));
+        Map<String, Object> list = SerializableJson.parseMap(new TrickleReader(LIST), projection);
+        assertEquals("List", list.get("kind"));
+        assertEquals("v1", list.get("apiVersion"));
+        // the paths apply to the List itself too
+        assertEquals(Collections.emptyMap(), list.get("metadata"));
+
+        List<Map<String, Object>> items = (List<Map<String, Object>>) list.get("items");
+        assertEquals(2, items.size());
+        Map<String, Object> frontend = items.get(0);
+        assertEquals("Pod", frontend.get("kind"));
+        assertEquals(Collections.singletonMap("name", "frontend"), frontend.get("metadata"));
+        assertFalse(frontend.containsKey("status"));
+        Map<String, Object> spec = (Map<String, Object>) frontend.get("spec");
+        assertEquals(Arrays.asList(Collections.singletonMap("image", "nginx:1"), Collections.singletonMap("image", "redis:7")),
+                spec.get("containers"));
+    }
+
+    @Test
+    public void keepsWholeSubtreesOfProjectedFields() throws IOException {
+        SerializableJson.Projection projection = SerializableJson.Projection.of(Arrays.asList("status", "status.phase"));
+        Map<String, Object> pod = SerializableJson.parseMap(LIST, projection);
+        Map<?, ?> frontend = (Map<?, ?>) ((List<?>) pod.get("items")).get(0);
+        assertEquals(new JsonSlurper().parseText("{\"phase\":\"Running\",\"conditions\":[{\"type\":\"Ready\",\"status\":\"True\"}]}"),
+                frontend.get("status"));
+        assertTrue(frontend.containsKey("kind"));
+        assertFalse(frontend.containsKey("spec"));
+
+        assertNull(SerializableJson.Projection.of(null));
+        assertNull(SerializableJson.Projection.of(Collections.emptyList()));
+    }
+
+    @Test
+    public void skipsUnprojectedValuesWithNestedStrings() throws IOException {
+        String json = "{\"kind\":\"Pod\",\"skip\":{\"a\":\"}]\\\"{[\",\"b\":[1,{\"c\":\"\\\\\"}]},\"keep\":2}";
+        SerializableJson.Projection projection = SerializableJson.Projection.of(Collections.singletonList("keep"));
+        HashMap<String, Object> expected = new HashMap<>();
+        expected.put("kind", "Pod");
+        expected.put("keep", 2);
+        assertEquals(expected, SerializableJson.parseMap(json, projection));
+        assertEquals(expected, SerializableJson.parseMap(new TrickleReader(json), projection));
+        assertThrows(JsonException.class,
+                () -> SerializableJson.parseMap("{\"skip\":{\"a\":[1,2}", projection));
+    }
+}
@@ -0,0 +1,145 @@
+package com.openshift.jenkins.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamMatcherTest {
+
+    private static boolean feed(StreamMatcher matcher, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return matcher.update(b, 0, b.length);
+    }
+
+    private static void assertMatched(StreamMatcher matcher, boolean... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], matcher.isMatched(i), "pattern " + i + " (" + matcher.getPattern(i) + ")");
+        }
+    }
+
+    @Test
+    public void findsOverlappingAndNestedPatterns() {
+        StreamMatcher matcher = new StreamMatcher("he", "she", "his", "hers");
+        assertTrue(feed(matcher, "ushers"));
+        assertMatched(matcher, true, true, false, true);
+        assertFalse(feed(matcher, "ushers"), "nothing new was found");
+        assertTrue(feed(matcher, " this"));
+        assertMatched(matcher, true, true, true, true);
+    }
+
+    @Test
+    public void findsPatternsSplitAcrossChunks() {
+        StreamMatcher matcher = new StreamMatcher("Running", "Failed");
+        assertFalse(feed(matcher, "phase: Run"));
+        assertFalse(feed(matcher, "n"));
+        assertTrue(feed(matcher, "ing"));
+        assertMatched(matcher, true, false);
+    }
+
+    @Test
+    public void findsMultiByteCharactersSplitAcrossChunks() {
+        StreamMatcher matcher = new StreamMatcher("d\u00e9ploy\u00e9 \uD83D\uDE80");
+        byte[] b = "status: d\u00e9ploy\u00e9 \uD83D\uDE80 ok".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < b.length; i++) {
+            matcher.update(b, i, 1);
+        }
+        assertTrue(matcher.isMatched(0));
+    }
+
+    @Test
+    public void matchesWithoutLineBreaks() {
+        // the output of a template such as {{.status.phase}} never ends a line
+        StreamMatcher matcher = new StreamMatcher("Complete");
+        assertFalse(feed(matcher, "PendingRunning"));
+        assertTrue(feed(matcher, "Complete"));
+    }
+
+    @Test
+    public void neverMatchesNullOrEmptyPatterns() {
+        StreamMatcher matcher = new StreamMatcher(null, "", "x");
+        assertFalse(feed(matcher, "abc"));
+        assertTrue(feed(matcher, "xyz"));
+        assertMatched(matcher, false, false, true);
+    }
+
+    @Test
+    public void rejectsMoreThan64Patterns() {
+        String[] patterns = new String[65];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = "p" + i;
+        }
+        assertThrows(IllegalArgumentException.class, () -> new StreamMatcher(patterns));
+        StreamMatcher matcher = new StreamMatcher(Arrays.copyOf(patterns, 64));
+        assertTrue(feed(matcher, "..p63.."));
+        assertTrue(matcher.isMatched(63));
+        assertTrue(matcher.isMatched(6), "p6 is a prefix of p63");
+        assertFalse(matcher.isMatched(7));
+    }
+
+    @Test
+    public void agreesWithStringContains() {
+        Random random = new Random(42);
+        String[] patterns = {"ab", "aba", "bab", "abba", "b", "cabbac"};
+        for (int round = 0; round < 500; round++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                sb.append("abc".charAt(random.nextInt(3)));
+            }
+            String text = sb.toString();
+            StreamMatcher matcher = new StreamMatcher(patterns);
+            byte[] b = text.getBytes(StandardCharsets.UTF_8);
+            for (int off = 0; off < b.length; ) {
+                int len = Math.min(b.length - off, 1 + random.nextInt(5));
+                matcher.update(b, off, len);
+                off += len;
+            }
+            for (int i = 0; i < patterns.length; i++) {
+                assertEquals(text.contains(patterns[i]), matcher.isMatched(i), text + " / " + patterns[i]);
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheTailOfTheOutput() {
+        StreamMatcher matcher = new StreamMatcher("x");
+        feed(matcher, "short");
+        assertEquals("short", matcher.getTail());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 6000; i++) {
+            sb.append(i % 10);
+        }
+        String text = sb.toString();
+        // small chunks wrap around the ring
+        for (int i = 0; i < text.length(); i += 7) {
+            feed(matcher, text.substring(i, Math.min(text.length(), i + 7)));
+        }
+        String all = "short" + text;
+        assertEquals(all.substring(all.length() - StreamMatcher.TAIL_SIZE), matcher.getTail());
+        // a chunk larger than the tail replaces it
+        String big = text + text;
+        feed(matcher, big);
+        assertEquals(big.substring(big.length() - StreamMatcher.TAIL_SIZE), matcher.getTail());
+    }
+
+    @Test
+    public void resetForgetsMatchesAndTail() {
+        StreamMatcher matcher = new StreamMatcher("abc");
+        feed(matcher, "xxab");
+        matcher.reset();
+        assertFalse(feed(matcher, "c"), "the partial match must not survive a reset");
+        assertEquals("c", matcher.getTail());
+        assertTrue(feed(matcher, "abc"));
+        matcher.reset();
+        assertFalse(matcher.isMatched(0));
+        assertEquals("", matcher.getTail());
+    }
+}
@@ -0,0 +1,148 @@
+package com.openshift.jenkins.plugins.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WatchEventCoalescerTest {
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+
+    private static Thread offerEvery(WatchEventCoalescer events, long periodMillis, int count) {
+        Thread t = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    events.offer();
+                    Thread.sleep(periodMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    @Test
+    @Timeout(10)
+    public void releasesABurstAsOneBatchOnceTheWindowIsQuiet() throws InterruptedException {
+        WatchEventCoalescer events = new WatchEventCoalescer(200, 5000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            events.offer();
+        }
+        assertEquals(50, events.awaitBatch(() -> false));
+        assertTrue(millisSince(start) >= 190, "released before the window was quiet");
+        assertEquals(50, events.getReceived());
+        assertEquals(1, events.getBatches());
+        assertEquals(49, events.getCoalesced());
+    }
+
+    @Test
+    @Timeout(10)
+    public void releasesASteadyStreamAfterTheMaximumLatency() throws InterruptedException {
+        // an event every 20ms never leaves the 200ms window quiet
+        WatchEventCoalescer events = new WatchEventCoalescer(200, 600);
+        Thread producer = offerEvery(events, 20, 200);
+        try {
+            long start = System.nanoTime();
+            int batch = events.awaitBatch(() -> false);
+            long waited = millisSince(start);
+            assertTrue(batch > 1, "expected several events, got " + batch);
+            assertTrue(waited >= 550 && waited < 2000, "waited " + waited + "ms");
+        } finally {
+            producer.interrupt();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void windowOfZeroStillMergesEventsReceivedMeanwhile() throws InterruptedException {
+        WatchEventCoalescer events = new WatchEventCoalescer(0, 0);
+        events.offer();
+        events.offer();
+        events.offer();
+        long start = System.nanoTime();
+        assertEquals(3, events.awaitBatch(() -> false));
+        assertTrue(millisSince(start) < 500);
+        events.offer();
+        assertEquals(1, events.awaitBatch(() -> false));
+        assertEquals(2, events.getBatches());
+        assertEquals(2, events.getCoalesced());
+    }
+
+    @Test
+    @Timeout(10)
+    public void releasesPendingEventsAtOnceWhenTheSourceStops() throws InterruptedException {
+        WatchEventCoalescer events = new WatchEventCoalescer(5000, 5000);
+        events.offer();
+        events.offer();
+        long start = System.nanoTime();
+        assertEquals(2, events.awaitBatch(() -> true));
+        assertTrue(millisSince(start) < 1000);
+        assertEquals(0, events.awaitBatch(() -> true));
+        assertEquals(1, events.getBatches());
+    }
+
+    @Test
+    @Timeout(10)
+    public void wakeEndsAnIdleWait() throws InterruptedException {
+        WatchEventCoalescer events = new WatchEventCoalescer(100, 100);
+        AtomicBoolean finished = new AtomicBoolean();
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            finished.set(true);
+            events.wake();
+        });
+        stopper.start();
+        long start = System.nanoTime();
+        assertEquals(0, events.awaitBatch(finished::get));
+        long waited = millisSince(start);
+        assertTrue(waited >= 150 && waited < 900, "waited " + waited + "ms");
+        stopper.join();
+    }
+
+    @Test
+    @Timeout(10)
+    public void wakesForAnEventOfferedWhileIdle() throws InterruptedException {
+        WatchEventCoalescer events = new WatchEventCoalescer(50, 50);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            events.offer();
+        });
+        producer.start();
+        long start = System.nanoTime();
+        assertEquals(1, events.awaitBatch(() -> false));
+        assertTrue(millisSince(start) < 900);
+        producer.join();
+    }
+
+    @Test
+    @Timeout(10)
+    public void clampsTheSettings() throws InterruptedException {
+        // a negative window counts as 0, a maximum latency below the window as the window
+        WatchEventCoalescer events = new WatchEventCoalescer(-5, -5);
+        events.offer();
+        assertEquals(1, events.awaitBatch(() -> false));
+        events = new WatchEventCoalescer(300, 10);
+        events.offer();
+        long start = System.nanoTime();
+        assertEquals(1, events.awaitBatch(() -> false));
+        assertTrue(millisSince(start) >= 290);
+    }
+}
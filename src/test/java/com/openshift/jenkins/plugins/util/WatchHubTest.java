@@ -0,0 +1,313 @@
+package com.openshift.jenkins.plugins.util;
+
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WatchHubTest {
+
+    private static final String RESUME_PATH = "/api/v1/namespaces/p/pods?labelSelector=app%3Dweb";
+    private static final String LIST = "--raw " + RESUME_PATH + "&limit=1";
+    private static final String WATCH = "--raw " + RESUME_PATH + "&watch=true&allowWatchBookmarks=true&resourceVersion=";
+
+    // stands in for `oc`, given the verb arguments of the command
+    private interface Oc {
+        int run(String args, ClientCommandRunner.OutputObserver stdout) throws Exception;
+    }
+
+    // a watch whose `oc` is faked, run in the context of the build named name
+    private static final class FakeSource extends WatchHub.Source {
+        private final String key;
+        private final String name;
+        private final List<String> runs;
+        private final Oc oc;
+
+        FakeSource(String key, String name, String resumePath, List<String> runs, Oc oc) {
+            super(new ClientCommandBuilder("https://api.example.com:6443", "p", true, null, "get", null,
+                    Arrays.asList("pods", "-l", "app=web", "-w", "-o=name"), null, null, "token", 0, false),
+                    resumePath, null, null, null);
+            this.key = key;
+            this.name = name;
+            this.runs = runs;
+            this.oc = oc;
+        }
+
+        @Override
+        String key() {
+            return key;
+        }
+
+        @Override
+        int run(ClientCommandBuilder builder, ClientCommandRunner.OutputObserver stdout,
+                ClientCommandRunner.OutputObserver stderr, TaskListener listener) throws Exception {
+            String args = String.join(" ", builder.verbArgs);
+            runs.add(name + ": " + args);
+            return oc.run(args, stdout);
+        }
+    }
+
+    private static final class Log implements TaskListener {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final PrintStream logger = new PrintStream(bytes, true);
+
+        @Override
+        public PrintStream getLogger() {
+            return logger;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String key() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static String list(String resourceVersion) {
+        return "{\"kind\":\"PodList\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"" + resourceVersion + "\"},"
+                + "\"items\":[{\"metadata\":{\"name\":\"frontend\",\"resourceVersion\":\"7\"}}]}";
+    }
+
+    private static String event(String type, String resourceVersion) {
+        return "{\"type\":\"" + type + "\",\"object\":{\"kind\":\"Pod\",\"apiVersion\":\"v1\","
+                + "\"metadata\":{\"name\":\"frontend\",\"resourceVersion\":\"" + resourceVersion + "\"}}}";
+    }
+
+    private static final String GONE = "{\"type\":\"ERROR\",\"object\":{\"kind\":\"Status\",\"apiVersion\":\"v1\","
+            + "\"metadata\":{},\"status\":\"Failure\",\"message\":\"too old resource version: 150 (250)\","
+            + "\"reason\":\"Expired\",\"code\":410}}";
+
+    // a watch which stays quiet until `oc` is killed
+    private static int block(CountDownLatch started) throws InterruptedException {
+        started.countDown();
+        Thread.sleep(Long.MAX_VALUE);
+        return 0;
+    }
+
+    @Test
+    public void listsOnceThenResumesFromWatchEventsAndBookmarks() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch watching = new CountDownLatch(1);
+        FakeSource source = new FakeSource(key(), "build", RESUME_PATH, runs, (args, stdout) -> {
+            switch (runs.size()) {
+            case 1:
+                stdout.onReadLine(list("100"));
+                return 0;
+            case 2:
+                stdout.onReadLine(event("ADDED", "101"));
+                // bookmarks keep the version current without reporting a change
+                stdout.onReadLine("{\"type\":\"BOOKMARK\",\"object\":{\"kind\":\"Pod\",\"apiVersion\":\"v1\","
+                        + "\"metadata\":{\"resourceVersion\":\"150\"}}}");
+                return 0; // the server timed the watch out
+            default:
+                return block(watching);
+            }
+        });
+        WatchEventCoalescer events = new WatchEventCoalescer(0, 0);
+        try (WatchHub.Subscription subscription = WatchHub.subscribe(source, events, new Log(), false)) {
+            assertTrue(watching.await(10, TimeUnit.SECONDS), runs.toString());
+            assertTrue(subscription.isOwner());
+        }
+        assertEquals(Arrays.asList("build: " + LIST, "build: " + WATCH + "100", "build: " + WATCH + "150"), runs);
+        // the listing and the ADDED event, not the bookmark
+        assertEquals(2, events.getReceived());
+    }
+
+    @Test
+    public void listsAgainWhenTheServerNoLongerKnowsTheVersion() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch watching = new CountDownLatch(1);
+        Log log = new Log();
+        FakeSource source = new FakeSource(key(), "build", RESUME_PATH, runs, (args, stdout) -> {
+            switch (runs.size()) {
+            case 1:
+                stdout.onReadLine(list("150"));
+                return 0;
+            case 2:
+                // the hub asks for `oc` to be killed once it sees the error
+                assertTrue(stdout.onReadLine(GONE));
+                return 1;
+            case 3:
+                stdout.onReadLine(list("300"));
+                return 0;
+            default:
+                return block(watching);
+            }
+        });
+        WatchEventCoalescer events = new WatchEventCoalescer(0, 0);
+        try (WatchHub.Subscription subscription = WatchHub.subscribe(source, events, log, false)) {
+            assertTrue(watching.await(10, TimeUnit.SECONDS), runs.toString());
+        }
+        assertEquals(Arrays.asList("build: " + LIST, "build: " + WATCH + "150", "build: " + LIST, "build: " + WATCH + "300"), runs);
+        // one per listing; the error itself is no change of the objects
+        assertEquals(2, events.getReceived());
+        assertTrue(log.toString().contains("410 Expired"), log.toString());
+    }
+
+    @Test
+    public void fallsBackToOcGetWatchWhenTheObjectsCannotBeListed() throws Exception {
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch watching = new CountDownLatch(1);
+        FakeSource source = new FakeSource(key(), "build", RESUME_PATH, runs, (args, stdout) -> {
+            if (args.startsWith("--raw")) {
+                return 1; // e.g. the cluster serves the kind under another API version
+            }
+            stdout.onReadLine("pod/frontend");
+            return block(watching);
+        });
+        WatchEventCoalescer events = new WatchEventCoalescer(0, 0);
+        try (WatchHub.Subscription subscription = WatchHub.subscribe(source, events, new Log(), false)) {
+            assertTrue(watching.await(10, TimeUnit.SECONDS), runs.toString());
+        }
+        assertEquals(Arrays.asList("build: " + LIST, "build: pods -l app=web -w -o=name"), runs);
+        assertEquals(1, events.getReceived());
+    }
+
+    @Test
+    public void stopsTheUpstreamWhenTheLastSubscriberLeaves() throws Exception {
+        String key = key();
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch watching = new CountDownLatch(1);
+        CountDownLatch killed = new CountDownLatch(1);
+        Oc oc = (args, stdout) -> {
+            try {
+                return block(watching);
+            } catch (InterruptedException e) {
+                killed.countDown();
+                throw e;
+            }
+        };
+        int upstreams = WatchHub.getUpstreamCount();
+        WatchHub.Subscription first = WatchHub.subscribe(new FakeSource(key, "a", null, runs, oc),
+                new WatchEventCoalescer(0, 0), new Log(), false);
+        assertTrue(watching.await(10, TimeUnit.SECONDS));
+        WatchHub.Subscription second = WatchHub.subscribe(new FakeSource(key, "b", null, runs, oc),
+                new WatchEventCoalescer(0, 0), new Log(), false);
+        assertEquals(upstreams + 1, WatchHub.getUpstreamCount());
+
+        // leaving the watch of another build changes nothing
+        second.close();
+        assertFalse(killed.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(upstreams + 1, WatchHub.getUpstreamCount());
+
+        first.close();
+        assertTrue(killed.await(10, TimeUnit.SECONDS));
+        assertEquals(upstreams, WatchHub.getUpstreamCount());
+        assertEquals(Arrays.asList("a: pods -l app=web -w -o=name"), runs);
+    }
+
+    @Test
+    public void givesALateSubscriberAnEventForTheListingItMissed() throws Exception {
+        String key = key();
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch watching = new CountDownLatch(1);
+        Oc oc = (args, stdout) -> {
+            stdout.onReadLine("pod/frontend");
+            return block(watching);
+        };
+        WatchEventCoalescer firstEvents = new WatchEventCoalescer(0, 0);
+        try (WatchHub.Subscription first = WatchHub.subscribe(new FakeSource(key, "a", null, runs, oc), firstEvents, new Log(), false)) {
+            assertTrue(watching.await(10, TimeUnit.SECONDS));
+            assertEquals(1, first.awaitBatch());
+            Log log = new Log();
+            try (WatchHub.Subscription second = WatchHub.subscribe(new FakeSource(key, "b", null, runs, oc),
+                    new WatchEventCoalescer(0, 0), log, false)) {
+                assertEquals(1, second.awaitBatch());
+                assertFalse(second.isOwner());
+                assertTrue(log.toString().contains("Sharing the watch already running for 2 watchers"), log.toString());
+            }
+            assertEquals(1, firstEvents.getReceived());
+        }
+        assertEquals(1, runs.size());
+    }
+
+    @Test
+    public void resumesTheWatchInTheContextOfTheNextSubscriber() throws Exception {
+        String key = key();
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch firstWatching = new CountDownLatch(1);
+        CountDownLatch secondWatching = new CountDownLatch(1);
+        Oc oc = (args, stdout) -> {
+            if (args.equals(LIST)) {
+                stdout.onReadLine(list("100"));
+                return 0;
+            }
+            return block(runs.size() == 2 ? firstWatching : secondWatching);
+        };
+        Log firstLog = new Log();
+        Log secondLog = new Log();
+        WatchHub.Subscription first = WatchHub.subscribe(new FakeSource(key, "a", RESUME_PATH, runs, oc),
+                new WatchEventCoalescer(0, 0), firstLog, false);
+        assertTrue(firstWatching.await(10, TimeUnit.SECONDS));
+        try (WatchHub.Subscription second = WatchHub.subscribe(new FakeSource(key, "b", RESUME_PATH, runs, oc),
+                new WatchEventCoalescer(0, 0), secondLog, false)) {
+            assertTrue(first.isOwner());
+            first.close();
+            assertTrue(secondWatching.await(10, TimeUnit.SECONDS));
+            assertTrue(second.isOwner());
+        }
+        // `oc` was killed and run again for b, from where it was, without listing again
+        assertEquals(Arrays.asList("a: " + LIST, "a: " + WATCH + "100", "b: " + WATCH + "100"), runs);
+        assertTrue(secondLog.toString().contains("Continuing the watch shared with a build which has finished"), secondLog.toString());
+        assertFalse(firstLog.toString().contains("Continuing"), firstLog.toString());
+    }
+
+    @Test
+    public void failsTheOwnerAndLetsOthersWatchAgain() throws Exception {
+        String key = key();
+        List<String> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        CountDownLatch watching = new CountDownLatch(1);
+        Oc oc = (args, stdout) -> {
+            if (runs.size() == 1) {
+                started.countDown();
+                fail.await();
+                throw new IOException("agent went offline");
+            }
+            return block(watching);
+        };
+        FakeSource b = new FakeSource(key, "b", null, runs, oc);
+        WatchHub.Subscription first = WatchHub.subscribe(new FakeSource(key, "a", null, runs, oc),
+                new WatchEventCoalescer(0, 0), new Log(), false);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        WatchHub.Subscription second = WatchHub.subscribe(b, new WatchEventCoalescer(0, 0), new Log(), false);
+        fail.countDown();
+
+        assertEquals(0, first.awaitBatch());
+        while (second.awaitBatch() > 0) {
+            // the event standing in for the listing
+        }
+        // the watch ran for a, so a's watch fails with it...
+        assertEquals("agent went offline", first.getFailure().getMessage());
+        assertTrue(first.isOwner());
+        // ...while b only shared it, and watches again on its own
+        assertSame(first.getFailure(), second.getFailure());
+        assertFalse(second.isOwner());
+        first.close();
+        second.close();
+
+        try (WatchHub.Subscription again = WatchHub.subscribe(b, new WatchEventCoalescer(0, 0), new Log(), false)) {
+            assertTrue(watching.await(10, TimeUnit.SECONDS));
+            assertTrue(again.isOwner());
+        }
+        assertEquals(Arrays.asList("a: pods -l app=web -w -o=name", "b: pods -l app=web -w -o=name"), runs);
+    }
+}